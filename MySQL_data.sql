@@ -45,6 +45,7 @@ CREATE TABLE rooms (
     room_type_id INT NOT NULL,
     floor_number INT,
     status ENUM('AVAILABLE', 'OCCUPIED', 'MAINTENANCE', 'RESERVED') DEFAULT 'AVAILABLE',
+    version BIGINT NOT NULL DEFAULT 0,
     FOREIGN KEY (room_type_id) REFERENCES room_types(room_type_id) ON DELETE RESTRICT
 );
 
@@ -61,11 +62,20 @@ CREATE TABLE reservations (
     special_requests TEXT,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    version BIGINT NOT NULL DEFAULT 0,
     FOREIGN KEY (customer_id) REFERENCES customers(customer_id) ON DELETE CASCADE,
     FOREIGN KEY (room_id) REFERENCES rooms(room_id) ON DELETE RESTRICT,
     CHECK (check_out_date > check_in_date)
 );
 
+-- 5a. Reservation ID sequence (Hibernate allocates reservation ids 50 at a time from here).
+-- Databases that already hold reservations must be seeded by step 1 of MySQL_upgrade.sql instead.
+CREATE TABLE reservations_seq (
+    next_val BIGINT
+);
+
+INSERT INTO reservations_seq (next_val) VALUES (1);
+
 -- 6. Payments Table
 CREATE TABLE payments (
     payment_id INT PRIMARY KEY AUTO_INCREMENT,
@@ -75,9 +85,20 @@ CREATE TABLE payments (
     payment_method ENUM('CASH', 'CREDIT_CARD', 'DEBIT_CARD', 'UPI', 'NET_BANKING') NOT NULL,
     payment_status ENUM('PENDING', 'COMPLETED', 'FAILED', 'REFUNDED') DEFAULT 'PENDING',
     transaction_id VARCHAR(100),
+    version BIGINT NOT NULL DEFAULT 0,
     FOREIGN KEY (reservation_id) REFERENCES reservations(reservation_id) ON DELETE CASCADE
 );
 
+-- Payment Idempotency Keys (one row per client Idempotency-Key, written with the payment)
+CREATE TABLE payment_idempotency_keys (
+    idempotency_key VARCHAR(100) PRIMARY KEY,
+    payment_id INT NOT NULL,
+    reservation_id INT NOT NULL,
+    amount DECIMAL(10, 2) NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (payment_id) REFERENCES payments(payment_id) ON DELETE CASCADE
+);
+
 -- 7. Reviews Table
 CREATE TABLE reviews (
     review_id INT PRIMARY KEY AUTO_INCREMENT,
@@ -102,6 +123,43 @@ CREATE TABLE staff (
     FOREIGN KEY (user_id) REFERENCES users(user_id) ON DELETE CASCADE
 );
 
+-- 9. Analytics Rollups (maintained by RollupService; POST /api/analytics/rollups/rebuild backfills them)
+CREATE TABLE occupancy_rollup (
+    stay_date DATE NOT NULL,
+    room_type_id INT NOT NULL,
+    occupied_rooms INT NOT NULL DEFAULT 0,
+    room_revenue DECIMAL(12, 2) NOT NULL DEFAULT 0,
+    PRIMARY KEY (stay_date, room_type_id)
+);
+
+CREATE TABLE revenue_rollup (
+    revenue_month DATE NOT NULL,
+    payment_method ENUM('CASH', 'CREDIT_CARD', 'DEBIT_CARD', 'UPI', 'NET_BANKING') NOT NULL,
+    total_revenue DECIMAL(14, 2) NOT NULL DEFAULT 0,
+    transactions BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (revenue_month, payment_method)
+);
+
+CREATE TABLE weekday_rollup (
+    day_of_week TINYINT PRIMARY KEY,
+    bookings BIGINT NOT NULL DEFAULT 0,
+    total_amount DECIMAL(14, 2) NOT NULL DEFAULT 0
+);
+
+-- Stays and payments entering (+1) or leaving (-1) the rollups, queued by the booking or payment
+-- transaction and applied to the tables above by RollupService's flusher
+CREATE TABLE rollup_changes (
+    change_id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    kind ENUM('STAY', 'PAYMENT') NOT NULL,
+    sign INT NOT NULL,
+    amount DECIMAL(12, 2) NOT NULL,
+    occurred_at DATETIME,
+    room_type_id INT,
+    check_in_date DATE,
+    check_out_date DATE,
+    payment_method ENUM('CASH', 'CREDIT_CARD', 'DEBIT_CARD', 'UPI', 'NET_BANKING')
+);
+
 -- Indexes for better performance
 CREATE INDEX idx_reservation_dates ON reservations(check_in_date, check_out_date);
 CREATE INDEX idx_room_status ON rooms(status);
@@ -0,0 +1,31 @@
+-- Upgrade steps for databases created from an earlier MySQL_data.sql. Run them once, in order,
+-- with the application stopped; a fresh install from MySQL_data.sql needs none of them.
+USE hotel_reservation_system;
+
+-- 1. Reservation ids moved from AUTO_INCREMENT to the pooled reservations_seq (allocationSize 50).
+-- Hibernate hands out the block of 50 ids ending at next_val, so next_val has to sit at least one
+-- whole block above the highest existing id. The application may already have created the table
+-- with next_val = 1, so it is reset either way.
+CREATE TABLE IF NOT EXISTS reservations_seq (
+    next_val BIGINT
+);
+
+DELETE FROM reservations_seq;
+
+INSERT INTO reservations_seq (next_val)
+SELECT (FLOOR(COALESCE(MAX(reservation_id), 0) / 50) + 2) * 50 FROM reservations;
+
+-- 2. Rollup changes are queued in rollup_changes instead of in memory. Earlier versions lost the
+-- changes they had not yet flushed whenever they stopped without a clean shutdown, so run
+-- POST /api/analytics/rollups/rebuild once after upgrading.
+CREATE TABLE IF NOT EXISTS rollup_changes (
+    change_id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    kind ENUM('STAY', 'PAYMENT') NOT NULL,
+    sign INT NOT NULL,
+    amount DECIMAL(12, 2) NOT NULL,
+    occurred_at DATETIME,
+    room_type_id INT,
+    check_in_date DATE,
+    check_out_date DATE,
+    payment_method ENUM('CASH', 'CREDIT_CARD', 'DEBIT_CARD', 'UPI', 'NET_BANKING')
+);
@@ -19,7 +19,9 @@
     <version>1.0.0</version>
     
     <properties>
-        <java.version>17</java.version>
+        <java.version>21</java.version>
+        <!-- 9.x replaced the driver's synchronized blocks, which pin virtual threads during socket reads -->
+        <mysql.version>9.0.0</mysql.version>
     </properties>
     
     <dependencies>
@@ -43,6 +45,19 @@
             <groupId>org.springframework.boot</groupId>
             <artifactId>spring-boot-starter-mail</artifactId>
         </dependency>
+        <dependency>
+            <groupId>org.springframework.boot</groupId>
+            <artifactId>spring-boot-starter-actuator</artifactId>
+        </dependency>
+        <dependency>
+            <groupId>io.micrometer</groupId>
+            <artifactId>micrometer-registry-prometheus</artifactId>
+            <scope>runtime</scope>
+        </dependency>
+        <dependency>
+            <groupId>com.github.ben-manes.caffeine</groupId>
+            <artifactId>caffeine</artifactId>
+        </dependency>
         <dependency>
             <groupId>com.mysql</groupId>
             <artifactId>mysql-connector-j</artifactId>
@@ -77,6 +92,10 @@
             <plugin>
                 <groupId>org.springframework.boot</groupId>
                 <artifactId>spring-boot-maven-plugin</artifactId>
+                <configuration>
+                    <!-- Keep the plain jar as the main artifact so the benchmarks module can depend on it -->
+                    <classifier>exec</classifier>
+                </configuration>
             </plugin>
         </plugins>
     </build>
@@ -95,6 +114,9 @@ spring.datasource.driver-class-name=com.mysql.cj.jdbc.Driver
 spring.jpa.hibernate.ddl-auto=update
 spring.jpa.show-sql=true
 spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.MySQLDialect
+spring.jpa.properties.hibernate.jdbc.batch_size=50
+spring.jpa.properties.hibernate.order_inserts=true
+spring.jpa.properties.hibernate.order_updates=true
 
 jwt.secret=mySecretKeyForJWTTokenGenerationAndValidation12345
 jwt.expiration=86400000
@@ -106,8 +128,85 @@ spring.mail.password=your-app-password
 spring.mail.properties.mail.smtp.auth=true
 spring.mail.properties.mail.smtp.starttls.enable=true
 
+hotel.threads.virtual=false
+
+hotel.inventory.horizon-days=730
+
+hotel.calendar.max-days=366
+
+hotel.events.buffer-size=256
+hotel.events.max-subscribers=1000
+hotel.events.stream-timeout-ms=1800000
+
+hotel.pricing.horizon-days=730
+hotel.pricing.weekend-days=FRIDAY,SATURDAY
+hotel.pricing.weekend-multiplier=1.15
+hotel.pricing.occupancy-tiers[0].min-occupancy=0.70
+hotel.pricing.occupancy-tiers[0].multiplier=1.10
+hotel.pricing.occupancy-tiers[1].min-occupancy=0.90
+hotel.pricing.occupancy-tiers[1].multiplier=1.25
+hotel.pricing.length-of-stay[0].min-nights=7
+hotel.pricing.length-of-stay[0].discount=0.10
+hotel.pricing.length-of-stay[1].min-nights=14
+hotel.pricing.length-of-stay[1].discount=0.15
+# Seasons are inclusive date ranges, e.g.
+# hotel.pricing.seasons[0].from=2026-12-20
+# hotel.pricing.seasons[0].to=2027-01-03
+# hotel.pricing.seasons[0].multiplier=1.40
+
+booking.database-lock=false
+booking.optimistic-retry.max-attempts=3
+booking.optimistic-retry.backoff-ms=20
+
+email.outbox.capacity=10000
+email.outbox.batch-size=50
+email.outbox.max-attempts=5
+email.outbox.initial-backoff-ms=1000
+email.outbox.poll-interval-ms=200
+
+analytics.rollups.flush-interval-ms=1000
+analytics.rollups.rebuild-pause-timeout-ms=30000
+
+catalog.cache.ttl-seconds=600
+catalog.cache.max-rooms=10000
+
+security.bcrypt.strength=10
+security.jwt.required=false
+security.credential-cache.ttl-seconds=300
+security.login.burst=10
+security.login.per-minute=10
+
+payments.idempotency.max-keys=100000
+payments.idempotency.ttl-minutes=1440
+
+management.endpoints.web.exposure.include=health,prometheus
+management.metrics.tags.application=hotel-reservation-system
+
 logging.level.com.hotel=DEBUG
 
+// ============================================
+// application-perf.properties
+// ============================================
+# Production performance profile, enabled with --spring.profiles.active=perf.
+# Pool sizing and MySQL driver caching come from hotel.datasource.* (DataSourceTuningProperties).
+spring.jpa.show-sql=false
+spring.jpa.open-in-view=false
+spring.jpa.properties.hibernate.jdbc.batch_versioned_data=true
+spring.jpa.properties.hibernate.query.in_clause_parameter_padding=true
+
+hotel.datasource.connections-per-core=2
+hotel.datasource.spindles=1
+hotel.datasource.connection-timeout=3s
+hotel.datasource.max-lifetime=30m
+hotel.datasource.cache-prepared-statements=true
+hotel.datasource.prepared-statement-cache-size=250
+hotel.datasource.prepared-statement-cache-sql-limit=2048
+hotel.datasource.server-prepared-statements=true
+hotel.datasource.rewrite-batched-statements=true
+
+logging.level.com.hotel=INFO
+logging.level.org.hibernate.SQL=WARN
+
 // ============================================
 // HotelReservationApplication.java
 // ============================================
@@ -197,7 +296,7 @@ public class Customer {
     @Column(name = "customer_id")
     private Long customerId;
     
-    @OneToOne
+    @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", unique = true)
     private User user;
     
@@ -274,7 +373,7 @@ public class Room {
     @Column(name = "room_number", unique = true, nullable = false)
     private String roomNumber;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "room_type_id", nullable = false)
     private RoomType roomType;
     
@@ -284,6 +383,10 @@ public class Room {
     @Enumerated(EnumType.STRING)
     private RoomStatus status = RoomStatus.AVAILABLE;
     
+    @Version
+    @Column(nullable = false)
+    private Long version;
+    
     public enum RoomStatus {
         AVAILABLE, OCCUPIED, MAINTENANCE, RESERVED
     }
@@ -292,6 +395,7 @@ public class Room {
 // Reservation.java
 package com.hotel.model;
 
+import com.hotel.exception.InvalidStateTransitionException;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -301,23 +405,35 @@ import org.hibernate.annotations.UpdateTimestamp;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
 
 @Entity
 @Table(name = "reservations")
+@NamedEntityGraph(name = "Reservation.details",
+        attributeNodes = {
+            @NamedAttributeNode("customer"),
+            @NamedAttributeNode(value = "room", subgraph = "room")
+        },
+        subgraphs = @NamedSubgraph(name = "room", attributeNodes = @NamedAttributeNode("roomType")))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Reservation {
+    // Sequence ids (table-backed on MySQL) let Hibernate batch inserts, which IDENTITY prevents
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "reservations_seq")
+    @SequenceGenerator(name = "reservations_seq", sequenceName = "reservations_seq", allocationSize = 50)
     @Column(name = "reservation_id")
     private Long reservationId;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "customer_id", nullable = false)
     private Customer customer;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "room_id", nullable = false)
     private Room room;
     
@@ -347,9 +463,32 @@ public class Reservation {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
     
+    @Version
+    @Column(nullable = false)
+    private Long version;
+    
     public enum ReservationStatus {
         PENDING, CONFIRMED, CANCELLED, COMPLETED
     }
+    
+    // PENDING -> CONFIRMED -> COMPLETED; anything not yet completed can be cancelled
+    private static final Map<ReservationStatus, Set<ReservationStatus>> TRANSITIONS = new EnumMap<>(Map.of(
+            ReservationStatus.PENDING, EnumSet.of(ReservationStatus.CONFIRMED, ReservationStatus.CANCELLED),
+            ReservationStatus.CONFIRMED, EnumSet.of(ReservationStatus.COMPLETED, ReservationStatus.CANCELLED),
+            ReservationStatus.CANCELLED, EnumSet.noneOf(ReservationStatus.class),
+            ReservationStatus.COMPLETED, EnumSet.noneOf(ReservationStatus.class)));
+    
+    public static boolean canTransition(ReservationStatus from, ReservationStatus to) {
+        return TRANSITIONS.get(from).contains(to);
+    }
+    
+    public void transitionTo(ReservationStatus next) {
+        if (!canTransition(status, next)) {
+            throw new InvalidStateTransitionException("Reservation " + reservationId + " cannot move from "
+                    + status + " to " + next);
+        }
+        status = next;
+    }
 }
 
 // Payment.java
@@ -374,7 +513,7 @@ public class Payment {
     @Column(name = "payment_id")
     private Long paymentId;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "reservation_id", nullable = false)
     private Reservation reservation;
     
@@ -396,6 +535,10 @@ public class Payment {
     @Column(name = "transaction_id", length = 100)
     private String transactionId;
     
+    @Version
+    @Column(nullable = false)
+    private Long version;
+    
     public enum PaymentMethod {
         CASH, CREDIT_CARD, DEBIT_CARD, UPI, NET_BANKING
     }
@@ -426,11 +569,11 @@ public class Review {
     @Column(name = "review_id")
     private Long reviewId;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "customer_id", nullable = false)
     private Customer customer;
     
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "room_type_id", nullable = false)
     private RoomType roomType;
     
@@ -445,6 +588,210 @@ public class Review {
     private LocalDateTime reviewDate;
 }
 
+// OccupancyRollup.java
+package com.hotel.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// Occupied rooms and room revenue per room type per night, maintained by RollupService
+@Entity
+@Table(name = "occupancy_rollup")
+@IdClass(OccupancyRollup.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OccupancyRollup {
+    @Id
+    @Column(name = "stay_date")
+    private LocalDate stayDate;
+    
+    @Id
+    @Column(name = "room_type_id")
+    private Long roomTypeId;
+    
+    @Column(name = "occupied_rooms", nullable = false)
+    private Integer occupiedRooms;
+    
+    @Column(name = "room_revenue", nullable = false, precision = 12, scale = 2)
+    private BigDecimal roomRevenue;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private LocalDate stayDate;
+        private Long roomTypeId;
+    }
+}
+
+// RevenueRollup.java
+package com.hotel.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// Completed payment totals per calendar month (first day of the month) and payment method
+@Entity
+@Table(name = "revenue_rollup")
+@IdClass(RevenueRollup.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevenueRollup {
+    @Id
+    @Column(name = "revenue_month")
+    private LocalDate revenueMonth;
+    
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "payment_method")
+    private Payment.PaymentMethod paymentMethod;
+    
+    @Column(name = "total_revenue", nullable = false, precision = 14, scale = 2)
+    private BigDecimal totalRevenue;
+    
+    @Column(nullable = false)
+    private Long transactions;
+    
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private LocalDate revenueMonth;
+        private Payment.PaymentMethod paymentMethod;
+    }
+}
+
+// WeekdayRollup.java
+package com.hotel.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+
+// Counted bookings by the weekday they were made on (1 = Monday ... 7 = Sunday)
+@Entity
+@Table(name = "weekday_rollup")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class WeekdayRollup {
+    @Id
+    @Column(name = "day_of_week")
+    private Integer dayOfWeek;
+    
+    @Column(nullable = false)
+    private Long bookings;
+    
+    @Column(name = "total_amount", nullable = false, precision = 14, scale = 2)
+    private BigDecimal totalAmount;
+}
+
+// RollupChange.java
+package com.hotel.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// A stay or completed payment entering (+1) or leaving (-1) the rollups, queued by the transaction
+// that made it and applied to the rollup tables by RollupService's flusher
+@Entity
+@Table(name = "rollup_changes")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RollupChange {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "change_id")
+    private Long changeId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Kind kind;
+    
+    @Column(nullable = false)
+    private Integer sign;
+    
+    @Column(nullable = false, precision = 12, scale = 2)
+    private BigDecimal amount;
+    
+    // When the reservation was made, or when the payment was taken
+    @Column(name = "occurred_at")
+    private LocalDateTime occurredAt;
+    
+    @Column(name = "room_type_id")
+    private Long roomTypeId;
+    
+    @Column(name = "check_in_date")
+    private LocalDate checkInDate;
+    
+    @Column(name = "check_out_date")
+    private LocalDate checkOutDate;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "payment_method")
+    private Payment.PaymentMethod paymentMethod;
+    
+    public enum Kind {
+        STAY, PAYMENT
+    }
+}
+
+// PaymentIdempotencyKey.java
+package com.hotel.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// The payment a client-supplied Idempotency-Key produced, plus enough of the request to spot reuse
+@Entity
+@Table(name = "payment_idempotency_keys")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentIdempotencyKey {
+    @Id
+    @Column(name = "idempotency_key", length = 100)
+    private String idempotencyKey;
+    
+    @Column(name = "payment_id", nullable = false)
+    private Long paymentId;
+    
+    @Column(name = "reservation_id", nullable = false)
+    private Long reservationId;
+    
+    @Column(nullable = false, precision = 10, scale = 2)
+    private BigDecimal amount;
+    
+    @CreationTimestamp
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
+
 // ============================================
 // REPOSITORY INTERFACES
 // ============================================
@@ -469,12 +816,14 @@ public interface UserRepository extends JpaRepository<User, Long> {
 package com.hotel.repository;
 
 import com.hotel.model.Customer;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 import java.util.Optional;
 
 @Repository
 public interface CustomerRepository extends JpaRepository<Customer, Long> {
+    @EntityGraph(attributePaths = "user")
     Optional<Customer> findByUser_UserId(Long userId);
 }
 
@@ -492,19 +841,72 @@ public interface RoomTypeRepository extends JpaRepository<RoomType, Long> {
 // RoomRepository.java
 package com.hotel.repository;
 
+import com.hotel.dto.RoomView;
 import com.hotel.model.Room;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface RoomRepository extends JpaRepository<Room, Long> {
+    String VIEW = "SELECT new com.hotel.dto.RoomView(r.roomId, r.roomNumber, r.floorNumber, r.status, " +
+                  "t.roomTypeId, t.typeName, t.basePrice, t.maxOccupancy) FROM Room r JOIN r.roomType t ";
+    String FILTERED = VIEW + "WHERE (:status IS NULL OR r.status = :status) ";
+    
     List<Room> findByStatus(Room.RoomStatus status);
     
-    @Query("SELECT r FROM Room r WHERE r.status = 'AVAILABLE' " +
+    @EntityGraph(attributePaths = "roomType")
+    Optional<Room> findWithRoomTypeByRoomId(Long roomId);
+    
+    @Query(VIEW + "ORDER BY r.roomId")
+    List<RoomView> findAllViews();
+    
+    @Query(FILTERED + "AND r.roomId > :after ORDER BY r.roomId")
+    List<RoomView> findPage(@Param("after") Long after,
+                            @Param("status") Room.RoomStatus status,
+                            Pageable pageable);
+    
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"))
+    @Query(FILTERED + "ORDER BY r.roomId")
+    Stream<RoomView> streamAll(@Param("status") Room.RoomStatus status);
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM Room r WHERE r.roomId = :roomId")
+    Optional<Room> findByIdForUpdate(@Param("roomId") Long roomId);
+    
+    @EntityGraph(attributePaths = "roomType")
+    List<Room> findByRoomIdIn(Collection<Long> roomIds);
+    
+    @Query("SELECT r.roomType.roomTypeId, COUNT(r) FROM Room r GROUP BY r.roomType.roomTypeId")
+    List<Object[]> countByRoomType();
+    
+    @Query("SELECT r.roomId FROM Room r WHERE (:roomTypeId IS NULL OR r.roomType.roomTypeId = :roomTypeId)")
+    List<Long> findRoomIds(@Param("roomTypeId") Long roomTypeId);
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM Room r JOIN FETCH r.roomType WHERE r.roomId IN :roomIds ORDER BY r.roomId")
+    List<Room> findAllByIdForUpdate(@Param("roomIds") Collection<Long> roomIds);
+    
+    // Flushes pending inserts first and detaches everything loaded in the current transaction
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Room r SET r.status = :status, r.version = r.version + 1 WHERE r.roomId IN :roomIds")
+    int updateStatus(@Param("roomIds") Collection<Long> roomIds, @Param("status") Room.RoomStatus status);
+    
+    @Query("SELECT r FROM Room r JOIN FETCH r.roomType WHERE r.status = 'AVAILABLE' " +
            "AND r.roomId NOT IN (" +
            "SELECT res.room.roomId FROM Reservation res " +
            "WHERE res.status IN ('CONFIRMED', 'PENDING') " +
@@ -516,28 +918,149 @@ public interface RoomRepository extends JpaRepository<Room, Long> {
 // ReservationRepository.java
 package com.hotel.repository;
 
+import com.hotel.dto.PricedStay;
+import com.hotel.dto.ReservationView;
+import com.hotel.dto.StayInterval;
 import com.hotel.model.Reservation;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface ReservationRepository extends JpaRepository<Reservation, Long> {
+    String VIEW = "SELECT new com.hotel.dto.ReservationView(r.reservationId, c.customerId, " +
+                  "CONCAT(c.firstName, ' ', c.lastName), rm.roomId, rm.roomNumber, r.checkInDate, " +
+                  "r.checkOutDate, r.numberOfGuests, r.totalAmount, r.status, r.specialRequests, r.createdAt) " +
+                  "FROM Reservation r JOIN r.customer c JOIN r.room rm ";
+    String FILTERED = VIEW + "WHERE (:status IS NULL OR r.status = :status) " +
+                      "AND (:from IS NULL OR r.checkOutDate >= :from) " +
+                      "AND (:to IS NULL OR r.checkInDate <= :to) ";
+    
     List<Reservation> findByCustomer_CustomerId(Long customerId);
     List<Reservation> findByStatus(Reservation.ReservationStatus status);
+    
+    @EntityGraph("Reservation.details")
+    Optional<Reservation> findWithDetailsByReservationId(Long reservationId);
+    
+    // Bumps the version at commit even when nothing else changes, so a concurrent cancel fails one side
+    @Lock(LockModeType.OPTIMISTIC_FORCE_INCREMENT)
+    @EntityGraph("Reservation.details")
+    Optional<Reservation> findLockedByReservationId(Long reservationId);
+    
+    @Query(VIEW + "WHERE c.customerId = :customerId ORDER BY r.reservationId")
+    List<ReservationView> findViewsByCustomerId(@Param("customerId") Long customerId);
+    
+    @Query(FILTERED + "AND r.reservationId > :after ORDER BY r.reservationId")
+    List<ReservationView> findPage(@Param("after") Long after,
+                                   @Param("status") Reservation.ReservationStatus status,
+                                   @Param("from") LocalDate from,
+                                   @Param("to") LocalDate to,
+                                   Pageable pageable);
+    
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"))
+    @Query(FILTERED + "ORDER BY r.reservationId")
+    Stream<ReservationView> streamAll(@Param("status") Reservation.ReservationStatus status,
+                                      @Param("from") LocalDate from,
+                                      @Param("to") LocalDate to);
+    
+    @Query("SELECT new com.hotel.dto.StayInterval(r.reservationId, r.room.roomId, r.checkInDate, r.checkOutDate) " +
+           "FROM Reservation r WHERE r.status IN :statuses")
+    List<StayInterval> findStays(@Param("statuses") Collection<Reservation.ReservationStatus> statuses);
+    
+    // Stays covering at least one day of [from, to], check-out day included; the check-in bound can use
+    // idx_reservation_dates
+    @Query("SELECT new com.hotel.dto.StayInterval(r.reservationId, r.room.roomId, r.checkInDate, r.checkOutDate) " +
+           "FROM Reservation r WHERE r.status IN :statuses " +
+           "AND r.checkInDate <= :to AND r.checkOutDate >= :from " +
+           "AND (:roomTypeId IS NULL OR r.room.roomType.roomTypeId = :roomTypeId)")
+    List<StayInterval> findStaysBetween(@Param("from") LocalDate from,
+                                        @Param("to") LocalDate to,
+                                        @Param("roomTypeId") Long roomTypeId,
+                                        @Param("statuses") Collection<Reservation.ReservationStatus> statuses);
+    
+    @Query("SELECT COUNT(r) > 0 FROM Reservation r WHERE r.room.roomId = :roomId " +
+           "AND r.status IN :statuses " +
+           "AND r.checkInDate <= :checkOut AND r.checkOutDate >= :checkIn")
+    boolean existsOverlapping(@Param("roomId") Long roomId,
+                              @Param("checkIn") LocalDate checkIn,
+                              @Param("checkOut") LocalDate checkOut,
+                              @Param("statuses") Collection<Reservation.ReservationStatus> statuses);
+    
+    @Query("SELECT DISTINCT r.room.roomId FROM Reservation r WHERE r.room.roomId IN :roomIds " +
+           "AND r.status IN :statuses " +
+           "AND r.checkInDate <= :checkOut AND r.checkOutDate >= :checkIn")
+    List<Long> findOverlappingRoomIds(@Param("roomIds") Collection<Long> roomIds,
+                                      @Param("checkIn") LocalDate checkIn,
+                                      @Param("checkOut") LocalDate checkOut,
+                                      @Param("statuses") Collection<Reservation.ReservationStatus> statuses);
+    
+    // Stays with at least one night in [from, to)
+    @Query("SELECT new com.hotel.dto.PricedStay(r.room.roomId, r.checkInDate, r.checkOutDate, r.totalAmount) " +
+           "FROM Reservation r WHERE r.status IN :statuses " +
+           "AND r.checkInDate < :to AND r.checkOutDate > :from " +
+           "AND (:roomTypeId IS NULL OR r.room.roomType.roomTypeId = :roomTypeId)")
+    List<PricedStay> findPricedStays(@Param("from") LocalDate from,
+                                     @Param("to") LocalDate to,
+                                     @Param("roomTypeId") Long roomTypeId,
+                                     @Param("statuses") Collection<Reservation.ReservationStatus> statuses);
 }
 
 // PaymentRepository.java
 package com.hotel.repository;
 
+import com.hotel.dto.PaymentView;
 import com.hotel.model.Payment;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
+    String VIEW = "SELECT new com.hotel.dto.PaymentView(p.paymentId, p.reservation.reservationId, p.amount, " +
+                  "p.paymentDate, p.paymentMethod, p.paymentStatus, p.transactionId) FROM Payment p ";
+    String FILTERED = VIEW + "WHERE (:status IS NULL OR p.paymentStatus = :status) " +
+                      "AND (:from IS NULL OR p.paymentDate >= :from) " +
+                      "AND (:to IS NULL OR p.paymentDate < :to) ";
+    
     List<Payment> findByReservation_ReservationId(Long reservationId);
+    
+    @Query(VIEW + "WHERE p.paymentId = :paymentId")
+    Optional<PaymentView> findViewById(@Param("paymentId") Long paymentId);
+    
+    @Query(FILTERED + "AND p.paymentId > :after ORDER BY p.paymentId")
+    List<PaymentView> findPage(@Param("after") Long after,
+                               @Param("status") Payment.PaymentStatus status,
+                               @Param("from") LocalDateTime from,
+                               @Param("to") LocalDateTime to,
+                               Pageable pageable);
+    
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"))
+    @Query(FILTERED + "ORDER BY p.paymentId")
+    Stream<PaymentView> streamAll(@Param("status") Payment.PaymentStatus status,
+                                  @Param("from") LocalDateTime from,
+                                  @Param("to") LocalDateTime to);
 }
 
 // ReviewRepository.java
@@ -553,44 +1076,206 @@ public interface ReviewRepository extends JpaRepository<Review, Long> {
     List<Review> findByRoomType_RoomTypeId(Long roomTypeId);
 }
 
-// ============================================
-// DTO CLASSES
-// ============================================
-
-// LoginRequest.java
-package com.hotel.dto;
+// OccupancyRollupRepository.java
+package com.hotel.repository;
 
-import jakarta.validation.constraints.NotBlank;
-import lombok.Data;
+import com.hotel.model.OccupancyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
 
-@Data
-public class LoginRequest {
-    @NotBlank
-    private String username;
+@Repository
+public interface OccupancyRollupRepository extends JpaRepository<OccupancyRollup, OccupancyRollup.Key> {
     
-    @NotBlank
-    private String password;
+    @Modifying
+    @Query(value = "INSERT INTO occupancy_rollup (stay_date, room_type_id, occupied_rooms, room_revenue) " +
+                   "VALUES (:stayDate, :roomTypeId, :rooms, :revenue) " +
+                   "ON DUPLICATE KEY UPDATE occupied_rooms = occupied_rooms + VALUES(occupied_rooms), " +
+                   "room_revenue = room_revenue + VALUES(room_revenue)", nativeQuery = true)
+    void add(@Param("stayDate") LocalDate stayDate,
+             @Param("roomTypeId") Long roomTypeId,
+             @Param("rooms") int rooms,
+             @Param("revenue") BigDecimal revenue);
+    
+    // Expands each counted stay into its nights [check-in, check-out), splitting the total as
+    // RollupService does: TRUNCATE per night, remainder on the first. The recursion runs once per
+    // night of the longest stay, so it stays under MySQL's default cte_max_recursion_depth of 1000.
+    @Modifying
+    @Query(value = "INSERT INTO occupancy_rollup (stay_date, room_type_id, occupied_rooms, room_revenue) " +
+                   "WITH RECURSIVE nights (stay_date, room_type_id, night, nights, per_night, revenue) AS (" +
+                   "SELECT s.check_in_date, s.room_type_id, 0, s.nights, s.per_night, " +
+                   "s.total_amount - s.per_night * (s.nights - 1) " +
+                   "FROM (SELECT r.check_in_date, rm.room_type_id, r.total_amount, " +
+                   "DATEDIFF(r.check_out_date, r.check_in_date) AS nights, " +
+                   "TRUNCATE(r.total_amount / DATEDIFF(r.check_out_date, r.check_in_date), 2) AS per_night " +
+                   "FROM reservations r JOIN rooms rm ON rm.room_id = r.room_id " +
+                   "WHERE r.status IN ('CONFIRMED', 'COMPLETED') AND r.check_out_date > r.check_in_date) s " +
+                   "UNION ALL " +
+                   "SELECT DATE_ADD(stay_date, INTERVAL 1 DAY), room_type_id, night + 1, nights, per_night, per_night " +
+                   "FROM nights WHERE night + 1 < nights) " +
+                   "SELECT stay_date, room_type_id, COUNT(*), SUM(revenue) FROM nights " +
+                   "GROUP BY stay_date, room_type_id", nativeQuery = true)
+    int rebuild();
+    
+    List<OccupancyRollup> findByStayDateBetweenOrderByStayDateAscRoomTypeIdAsc(LocalDate from, LocalDate to);
 }
 
-// RegisterRequest.java
-package com.hotel.dto;
+// RevenueRollupRepository.java
+package com.hotel.repository;
 
-import jakarta.validation.constraints.Email;
-import jakarta.validation.constraints.NotBlank;
-import jakarta.validation.constraints.Size;
-import lombok.Data;
+import com.hotel.model.RevenueRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
 
-@Data
-public class RegisterRequest {
-    @NotBlank
-    @Size(min = 3, max = 50)
-    private String username;
+@Repository
+public interface RevenueRollupRepository extends JpaRepository<RevenueRollup, RevenueRollup.Key> {
     
-    @NotBlank
-    @Size(min = 6, max = 100)
-    private String password;
+    @Modifying
+    @Query(value = "INSERT INTO revenue_rollup (revenue_month, payment_method, total_revenue, transactions) " +
+                   "VALUES (:month, :method, :amount, :transactions) " +
+                   "ON DUPLICATE KEY UPDATE total_revenue = total_revenue + VALUES(total_revenue), " +
+                   "transactions = transactions + VALUES(transactions)", nativeQuery = true)
+    void add(@Param("month") LocalDate month,
+             @Param("method") String method,
+             @Param("amount") BigDecimal amount,
+             @Param("transactions") long transactions);
     
-    @NotBlank
+    @Modifying
+    @Query(value = "INSERT INTO revenue_rollup (revenue_month, payment_method, total_revenue, transactions) " +
+                   "SELECT DATE_FORMAT(payment_date, '%Y-%m-01'), payment_method, SUM(amount), COUNT(*) " +
+                   "FROM payments WHERE payment_status = 'COMPLETED' " +
+                   "GROUP BY DATE_FORMAT(payment_date, '%Y-%m-01'), payment_method", nativeQuery = true)
+    int rebuild();
+    
+    List<RevenueRollup> findByRevenueMonthBetweenOrderByRevenueMonthAsc(LocalDate from, LocalDate to);
+}
+
+// WeekdayRollupRepository.java
+package com.hotel.repository;
+
+import com.hotel.model.WeekdayRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.math.BigDecimal;
+import java.util.List;
+
+@Repository
+public interface WeekdayRollupRepository extends JpaRepository<WeekdayRollup, Integer> {
+    
+    @Modifying
+    @Query(value = "INSERT INTO weekday_rollup (day_of_week, bookings, total_amount) " +
+                   "VALUES (:dayOfWeek, :bookings, :amount) " +
+                   "ON DUPLICATE KEY UPDATE bookings = bookings + VALUES(bookings), " +
+                   "total_amount = total_amount + VALUES(total_amount)", nativeQuery = true)
+    void add(@Param("dayOfWeek") int dayOfWeek,
+             @Param("bookings") long bookings,
+             @Param("amount") BigDecimal amount);
+    
+    // WEEKDAY() is 0 for Monday
+    @Modifying
+    @Query(value = "INSERT INTO weekday_rollup (day_of_week, bookings, total_amount) " +
+                   "SELECT WEEKDAY(created_at) + 1, COUNT(*), SUM(total_amount) FROM reservations " +
+                   "WHERE status IN ('CONFIRMED', 'COMPLETED') GROUP BY WEEKDAY(created_at)", nativeQuery = true)
+    int rebuild();
+    
+    List<WeekdayRollup> findAllByOrderByDayOfWeekAsc();
+}
+
+// RollupChangeRepository.java
+package com.hotel.repository;
+
+import com.hotel.model.RollupChange;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+
+@Repository
+public interface RollupChangeRepository extends JpaRepository<RollupChange, Long> {
+    
+    // Rows another instance's flusher has locked are skipped, so no change is applied twice
+    @Query(value = "SELECT * FROM rollup_changes ORDER BY change_id LIMIT :limit FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<RollupChange> lockNextBatch(@Param("limit") int limit);
+}
+
+// PaymentIdempotencyKeyRepository.java
+package com.hotel.repository;
+
+import com.hotel.model.PaymentIdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.math.BigDecimal;
+
+@Repository
+public interface PaymentIdempotencyKeyRepository extends JpaRepository<PaymentIdempotencyKey, String> {
+    
+    // A plain INSERT rather than save(): a key committed by another instance must fail on the primary key
+    @Modifying
+    @Query(value = "INSERT INTO payment_idempotency_keys (idempotency_key, payment_id, reservation_id, amount, created_at) " +
+                   "VALUES (:key, :paymentId, :reservationId, :amount, CURRENT_TIMESTAMP)", nativeQuery = true)
+    void insert(@Param("key") String key,
+                @Param("paymentId") Long paymentId,
+                @Param("reservationId") Long reservationId,
+                @Param("amount") BigDecimal amount);
+}
+
+// ============================================
+// DTO CLASSES
+// ============================================
+
+// LoginRequest.java
+package com.hotel.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+@Data
+public class LoginRequest {
+    @NotBlank
+    private String username;
+    
+    @NotBlank
+    private String password;
+}
+
+// RegisterRequest.java
+package com.hotel.dto;
+
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+@Data
+public class RegisterRequest {
+    @NotBlank
+    @Size(min = 3, max = 50)
+    private String username;
+    
+    @NotBlank
+    @Size(min = 6, max = 100)
+    private String password;
+    
+    @NotBlank
     @Email
     private String email;
     
@@ -632,6 +1317,40 @@ public class ReservationRequest {
     private String specialRequests;
 }
 
+// GroupReservationRequest.java
+package com.hotel.dto;
+
+import jakarta.validation.constraints.Future;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+import java.time.LocalDate;
+import java.util.List;
+
+@Data
+public class GroupReservationRequest {
+    @NotEmpty
+    @Size(max = 200)
+    private List<@NotNull Long> roomIds;
+    
+    @NotNull
+    @Future
+    private LocalDate checkInDate;
+    
+    @NotNull
+    @Future
+    private LocalDate checkOutDate;
+    
+    // Guests per room
+    @NotNull
+    @Min(1)
+    private Integer numberOfGuests;
+    
+    private String specialRequests;
+}
+
 // PaymentRequest.java
 package com.hotel.dto;
 
@@ -656,6 +1375,305 @@ public class PaymentRequest {
     private String transactionId;
 }
 
+// KeysetPage.java
+package com.hotel.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import java.util.List;
+import java.util.function.Function;
+
+@Data
+@AllArgsConstructor
+public class KeysetPage<T> {
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 500;
+    
+    private List<T> items;
+    private Long nextAfter;
+    
+    public static int clampLimit(int limit) {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+    
+    public static <T> KeysetPage<T> of(List<T> items, int limit, Function<T, Long> idOf) {
+        Long nextAfter = items.size() < limit ? null : idOf.apply(items.get(items.size() - 1));
+        return new KeysetPage<>(items, nextAfter);
+    }
+}
+
+// RoomView.java
+package com.hotel.dto;
+
+import com.hotel.model.Room;
+import com.hotel.model.RoomType;
+import lombok.Value;
+import java.math.BigDecimal;
+
+@Value
+public class RoomView {
+    Long roomId;
+    String roomNumber;
+    Integer floorNumber;
+    Room.RoomStatus status;
+    Long roomTypeId;
+    String typeName;
+    BigDecimal basePrice;
+    Integer maxOccupancy;
+    
+    public static RoomView from(Room room) {
+        RoomType roomType = room.getRoomType();
+        return new RoomView(room.getRoomId(), room.getRoomNumber(), room.getFloorNumber(), room.getStatus(),
+                roomType.getRoomTypeId(), roomType.getTypeName(), roomType.getBasePrice(),
+                roomType.getMaxOccupancy());
+    }
+}
+
+// ReservationView.java
+package com.hotel.dto;
+
+import com.hotel.model.Customer;
+import com.hotel.model.Reservation;
+import com.hotel.model.Room;
+import lombok.Value;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Value
+public class ReservationView {
+    Long reservationId;
+    Long customerId;
+    String customerName;
+    Long roomId;
+    String roomNumber;
+    LocalDate checkInDate;
+    LocalDate checkOutDate;
+    Integer numberOfGuests;
+    BigDecimal totalAmount;
+    Reservation.ReservationStatus status;
+    String specialRequests;
+    LocalDateTime createdAt;
+    
+    public static ReservationView from(Reservation reservation) {
+        Customer customer = reservation.getCustomer();
+        Room room = reservation.getRoom();
+        return new ReservationView(reservation.getReservationId(), customer.getCustomerId(),
+                customer.getFirstName() + " " + customer.getLastName(), room.getRoomId(), room.getRoomNumber(),
+                reservation.getCheckInDate(), reservation.getCheckOutDate(), reservation.getNumberOfGuests(),
+                reservation.getTotalAmount(), reservation.getStatus(), reservation.getSpecialRequests(),
+                reservation.getCreatedAt());
+    }
+}
+
+// RollupStay.java
+package com.hotel.dto;
+
+import lombok.Value;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// The parts of a reservation the rollups aggregate
+@Value
+public class RollupStay {
+    Long roomTypeId;
+    LocalDate checkInDate;
+    LocalDate checkOutDate;
+    BigDecimal totalAmount;
+    LocalDateTime createdAt;
+}
+
+// OccupancyPoint.java
+package com.hotel.dto;
+
+import lombok.Value;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Value
+public class OccupancyPoint {
+    LocalDate date;
+    Long roomTypeId;
+    int occupiedRooms;
+    long totalRooms;
+    double occupancyRate;
+    BigDecimal roomRevenue;
+}
+
+// PaymentView.java
+package com.hotel.dto;
+
+import com.hotel.model.Payment;
+import lombok.Value;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Value
+public class PaymentView {
+    Long paymentId;
+    Long reservationId;
+    BigDecimal amount;
+    LocalDateTime paymentDate;
+    Payment.PaymentMethod paymentMethod;
+    Payment.PaymentStatus paymentStatus;
+    String transactionId;
+    
+    public static PaymentView from(Payment payment) {
+        return new PaymentView(payment.getPaymentId(), payment.getReservation().getReservationId(),
+                payment.getAmount(), payment.getPaymentDate(), payment.getPaymentMethod(),
+                payment.getPaymentStatus(), payment.getTransactionId());
+    }
+}
+
+// IdempotentPayment.java
+package com.hotel.dto;
+
+import lombok.Value;
+
+@Value
+public class IdempotentPayment {
+    PaymentView payment;
+    boolean replayed;
+}
+
+// StayInterval.java
+package com.hotel.dto;
+
+import lombok.Value;
+import java.time.LocalDate;
+
+@Value
+public class StayInterval {
+    Long reservationId;
+    Long roomId;
+    LocalDate checkInDate;
+    LocalDate checkOutDate;
+}
+
+// PricedStay.java
+package com.hotel.dto;
+
+import lombok.Value;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Value
+public class PricedStay {
+    Long roomId;
+    LocalDate checkInDate;
+    LocalDate checkOutDate;
+    BigDecimal totalAmount;
+}
+
+// RateQuote.java
+package com.hotel.dto;
+
+import lombok.Value;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Value
+public class RateQuote {
+    Long roomTypeId;
+    String typeName;
+    LocalDate checkInDate;
+    LocalDate checkOutDate;
+    long nights;
+    BigDecimal totalAmount;
+    BigDecimal averageNightlyRate;
+}
+
+// RoomTypeAvailability.java
+package com.hotel.dto;
+
+import lombok.Value;
+import java.math.BigDecimal;
+
+@Value
+public class RoomTypeAvailability {
+    Long roomTypeId;
+    String typeName;
+    Integer maxOccupancy;
+    BigDecimal basePrice;
+    int totalRooms;
+    int availableRooms;
+}
+
+// AvailabilityCalendar.java
+package com.hotel.dto;
+
+import lombok.Value;
+import java.time.LocalDate;
+import java.util.List;
+
+@Value
+public class AvailabilityCalendar {
+    // Bit d of a row is bit (d % 8) of byte (d / 8), least significant first, set when day from + d is booked
+    public static final String ENCODING = "base64-bitset-lsb";
+    
+    LocalDate from;
+    int days;
+    String encoding;
+    List<CalendarRow> rooms;
+}
+
+// CalendarRow.java
+package com.hotel.dto;
+
+import com.hotel.model.Room;
+import lombok.Value;
+
+@Value
+public class CalendarRow {
+    Long roomId;
+    String roomNumber;
+    Long roomTypeId;
+    Room.RoomStatus status;
+    String booked;
+}
+
+// ChangeEvent.java
+package com.hotel.dto;
+
+import com.hotel.model.Payment;
+import com.hotel.model.Reservation;
+import com.hotel.model.Room;
+import lombok.Value;
+import java.time.LocalDateTime;
+
+@Value
+public class ChangeEvent {
+    public enum EntityType { RESERVATION, ROOM, PAYMENT }
+    
+    public enum Kind { CREATED, UPDATED, DELETED }
+    
+    EntityType entityType;
+    Long id;
+    Kind kind;
+    String status;
+    LocalDateTime occurredAt;
+    
+    public static ChangeEvent of(Reservation reservation, Kind kind) {
+        return new ChangeEvent(EntityType.RESERVATION, reservation.getReservationId(), kind,
+                reservation.getStatus().name(), LocalDateTime.now());
+    }
+    
+    public static ChangeEvent of(Room room, Kind kind) {
+        return new ChangeEvent(EntityType.ROOM, room.getRoomId(), kind, room.getStatus().name(), LocalDateTime.now());
+    }
+    
+    public static ChangeEvent of(Payment payment, Kind kind) {
+        return new ChangeEvent(EntityType.PAYMENT, payment.getPaymentId(), kind,
+                payment.getPaymentStatus().name(), LocalDateTime.now());
+    }
+    
+    // Events with the same key describe the same row, so only the latest one matters to a client
+    public String key() {
+        return entityType.name() + ':' + id;
+    }
+}
+
 // ============================================
 // SERVICE CLASSES
 // ============================================
@@ -670,6 +1688,9 @@ import com.hotel.model.Customer;
 import com.hotel.model.User;
 import com.hotel.repository.CustomerRepository;
 import com.hotel.repository.UserRepository;
+import com.hotel.security.AuthenticatedUser;
+import com.hotel.security.CredentialCache;
+import com.hotel.security.LoginRateLimiter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -682,6 +1703,8 @@ public class UserService {
     private final UserRepository userRepository;
     private final CustomerRepository customerRepository;
     private final PasswordEncoder passwordEncoder;
+    private final CredentialCache credentialCache;
+    private final LoginRateLimiter loginRateLimiter;
     
     @Transactional
     public User registerUser(RegisterRequest request) {
@@ -712,7 +1735,13 @@ public class UserService {
         return savedUser;
     }
     
-    public User authenticate(LoginRequest request) {
+    public AuthenticatedUser authenticate(LoginRequest request) {
+        AuthenticatedUser cached = credentialCache.get(request.getUsername(), request.getPassword());
+        if (cached != null) {
+            return cached;
+        }
+        
+        loginRateLimiter.acquire(request.getUsername());
         User user = userRepository.findByUsername(request.getUsername())
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
         
@@ -720,7 +1749,9 @@ public class UserService {
             throw new RuntimeException("Invalid credentials");
         }
         
-        return user;
+        AuthenticatedUser authenticated = new AuthenticatedUser(user.getUserId(), user.getUsername(), user.getRole());
+        credentialCache.put(request.getUsername(), request.getPassword(), authenticated);
+        return authenticated;
     }
     
     public User getUserById(Long id) {
@@ -732,541 +1763,5639 @@ public class UserService {
 // RoomService.java
 package com.hotel.service;
 
+import com.hotel.dto.ChangeEvent;
+import com.hotel.dto.KeysetPage;
+import com.hotel.dto.RoomTypeAvailability;
+import com.hotel.dto.RoomView;
 import com.hotel.exception.ResourceNotFoundException;
 import com.hotel.model.Room;
 import com.hotel.model.RoomType;
 import com.hotel.repository.RoomRepository;
-import com.hotel.repository.RoomTypeRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class RoomService {
     
     private final RoomRepository roomRepository;
-    private final RoomTypeRepository roomTypeRepository;
+    private final AvailabilityIndex availabilityIndex;
+    private final InventoryMatrix inventoryMatrix;
+    private final RoomCatalogCache roomCatalogCache;
+    private final ApplicationEventPublisher eventPublisher;
+    
+    public KeysetPage<RoomView> getRooms(Long after, int limit, Room.RoomStatus status) {
+        int pageSize = KeysetPage.clampLimit(limit);
+        List<RoomView> rooms = roomRepository.findPage(after == null ? 0L : after, status,
+                PageRequest.of(0, pageSize));
+        return KeysetPage.of(rooms, pageSize, RoomView::getRoomId);
+    }
     
-    public List<Room> getAllRooms() {
-        return roomRepository.findAll();
+    @Transactional(readOnly = true)
+    public void exportRooms(Room.RoomStatus status, Consumer<RoomView> sink) {
+        try (Stream<RoomView> rooms = roomRepository.streamAll(status)) {
+            rooms.forEach(sink);
+        }
     }
     
     public Room getRoomById(Long id) {
-        return roomRepository.findById(id)
+        return roomRepository.findWithRoomTypeByRoomId(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Room not found with id: " + id));
     }
     
-    public List<Room> getAvailableRooms(LocalDate checkIn, LocalDate checkOut) {
-        return roomRepository.findAvailableRooms(checkIn, checkOut);
+    public RoomView getRoom(Long id) {
+        return roomCatalogCache.getRoom(id);
+    }
+    
+    public List<RoomView> getAvailableRooms(LocalDate checkIn, LocalDate checkOut) {
+        if (availabilityIndex.isReady()) {
+            return availabilityIndex.findAvailableRooms(checkIn, checkOut);
+        }
+        return roomRepository.findAvailableRooms(checkIn, checkOut).stream()
+                .map(RoomView::from)
+                .toList();
+    }
+    
+    public Map<String, Object> checkAvailabilityIndex(LocalDate checkIn, LocalDate checkOut) {
+        return availabilityIndex.verify(checkIn, checkOut);
+    }
+    
+    // Counts come from the cached catalog and the inventory matrix; no rooms or reservations are loaded
+    public List<RoomTypeAvailability> searchAvailability(LocalDate checkIn, LocalDate checkOut,
+                                                         Integer guests, Long roomTypeId) {
+        if (!checkOut.isAfter(checkIn)) {
+            throw new RuntimeException("Check-out date must be after check-in date");
+        }
+        if (!inventoryMatrix.isReady()) {
+            throw new RuntimeException("Inventory is still loading, please retry");
+        }
+        List<RoomTypeAvailability> results = new ArrayList<>();
+        for (RoomType roomType : roomCatalogCache.getRoomTypes()) {
+            if ((roomTypeId != null && !roomTypeId.equals(roomType.getRoomTypeId()))
+                    || (guests != null && roomType.getMaxOccupancy() < guests)) {
+                continue;
+            }
+            results.add(new RoomTypeAvailability(roomType.getRoomTypeId(), roomType.getTypeName(),
+                    roomType.getMaxOccupancy(), roomType.getBasePrice(),
+                    inventoryMatrix.totalRooms(roomType.getRoomTypeId()),
+                    inventoryMatrix.available(roomType.getRoomTypeId(), checkIn, checkOut)));
+        }
+        return results;
     }
     
     public List<RoomType> getAllRoomTypes() {
-        return roomTypeRepository.findAll();
+        return roomCatalogCache.getRoomTypes();
     }
     
-    public Room createRoom(Room room) {
-        return roomRepository.save(room);
+    public Map<String, Object> getCatalogStats() {
+        return roomCatalogCache.stats();
     }
     
-    public Room updateRoomStatus(Long roomId, Room.RoomStatus status) {
-        Room room = getRoomById(roomId);
-        room.setStatus(status);
-        return roomRepository.save(room);
+    public Map<Long, Long> countRoomsByType() {
+        return roomRepository.countByRoomType().stream()
+                .collect(Collectors.toMap(row -> (Long) row[0], row -> (Long) row[1]));
+    }
+    
+    // Views are built before commit: with open-in-view off a merged room's type is an unloaded proxy
+    @Transactional
+    public RoomView createRoom(Room room) {
+        Long roomTypeId = room.getRoomType() == null ? null : room.getRoomType().getRoomTypeId();
+        if (roomTypeId == null) {
+            throw new RuntimeException("Room type is required");
+        }
+        room.setRoomType(roomCatalogCache.getRoomType(roomTypeId));
+        Room savedRoom = roomRepository.save(room);
+        availabilityIndex.recordRoom(savedRoom);
+        roomCatalogCache.evictRoom(savedRoom.getRoomId());
+        eventPublisher.publishEvent(ChangeEvent.of(savedRoom, ChangeEvent.Kind.CREATED));
+        return RoomView.from(savedRoom);
+    }
+    
+    @Transactional
+    public RoomView updateRoomStatus(Long roomId, Room.RoomStatus status) {
+        return RoomView.from(setRoomStatus(getRoomById(roomId), status));
+    }
+    
+    @Transactional
+    public Room setRoomStatus(Room room, Room.RoomStatus status) {
+        room.setStatus(status);
+        Room savedRoom = roomRepository.save(room);
+        availabilityIndex.recordRoom(savedRoom);
+        roomCatalogCache.evictRoom(savedRoom.getRoomId());
+        eventPublisher.publishEvent(ChangeEvent.of(savedRoom, ChangeEvent.Kind.UPDATED));
+        return savedRoom;
+    }
+    
+    // Rooms must be loaded with their room type: the bulk update detaches them
+    @Transactional
+    public void setRoomsStatus(List<Room> rooms, Room.RoomStatus status) {
+        roomRepository.updateStatus(rooms.stream().map(Room::getRoomId).toList(), status);
+        for (Room room : rooms) {
+            room.setStatus(status);
+            availabilityIndex.recordRoom(room);
+            roomCatalogCache.evictRoom(room.getRoomId());
+            eventPublisher.publishEvent(ChangeEvent.of(room, ChangeEvent.Kind.UPDATED));
+        }
     }
 }
 
-// ReservationService.java
+// RoomCatalogCache.java
 package com.hotel.service;
 
-import com.hotel.dto.ReservationRequest;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.hotel.dto.RoomView;
 import com.hotel.exception.ResourceNotFoundException;
-import com.hotel.model.Customer;
-import com.hotel.model.Reservation;
-import com.hotel.model.Room;
-import com.hotel.repository.CustomerRepository;
-import com.hotel.repository.ReservationRepository;
+import com.hotel.model.RoomType;
 import com.hotel.repository.RoomRepository;
+import com.hotel.repository.RoomTypeRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
-import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import java.math.BigDecimal;
-import java.time.temporal.ChronoUnit;
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
-@Service
+// The room catalog only changes through RoomService, so it is served from memory. Writes evict
+// the affected room once they commit; the TTL picks up anything edited directly in the database.
+@Component
 @RequiredArgsConstructor
-public class ReservationService {
+public class RoomCatalogCache {
+    
+    private static final String ALL_TYPES = "all";
     
-    private final ReservationRepository reservationRepository;
     private final RoomRepository roomRepository;
-    private final CustomerRepository customerRepository;
-    private final EmailService emailService;
+    private final RoomTypeRepository roomTypeRepository;
+    private final MeterRegistry meterRegistry;
+    
+    private Cache<String, Map<Long, RoomType>> roomTypes;
+    private Cache<Long, RoomView> rooms;
     
-    public List<Reservation> getAllReservations() {
-        return reservationRepository.findAll();
+    @Value("${catalog.cache.ttl-seconds:600}")
+    private long ttlSeconds;
+    
+    @Value("${catalog.cache.max-rooms:10000}")
+    private long maxRooms;
+    
+    @PostConstruct
+    void init() {
+        roomTypes = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        rooms = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxRooms)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, roomTypes, "roomTypes");
+        CaffeineCacheMetrics.monitor(meterRegistry, rooms, "rooms");
     }
     
-    public Reservation getReservationById(Long id) {
-        return reservationRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Reservation not found with id: " + id));
+    public List<RoomType> getRoomTypes() {
+        return List.copyOf(roomTypeCatalog().values());
     }
     
-    public List<Reservation> getReservationsByCustomerId(Long customerId) {
-        return reservationRepository.findByCustomer_CustomerId(customerId);
+    public RoomType getRoomType(Long roomTypeId) {
+        RoomType roomType = roomTypeCatalog().get(roomTypeId);
+        if (roomType == null) {
+            // Added since the catalog was loaded; reload once before giving up
+            roomTypes.invalidate(ALL_TYPES);
+            roomType = roomTypeCatalog().get(roomTypeId);
+        }
+        if (roomType == null) {
+            throw new ResourceNotFoundException("Room type not found with id: " + roomTypeId);
+        }
+        return roomType;
     }
     
-    @Transactional
-    public Reservation createReservation(Long userId, ReservationRequest request) {
-        Customer customer = customerRepository.findByUser_UserId(userId)
-                .orElseThrow(() -> new ResourceNotFoundException("Customer not found"));
-        
-        Room room = roomRepository.findById(request.getRoomId())
-                .orElseThrow(() -> new ResourceNotFoundException("Room not found"));
-        
-        if (request.getCheckOutDate().isBefore(request.getCheckInDate())) {
-            throw new RuntimeException("Check-out date must be after check-in date");
+    public BigDecimal getBasePrice(Long roomTypeId) {
+        return getRoomType(roomTypeId).getBasePrice();
+    }
+    
+    public RoomView getRoom(Long roomId) {
+        RoomView room = rooms.get(roomId, id -> roomRepository.findWithRoomTypeByRoomId(id)
+                .map(RoomView::from)
+                .orElse(null));
+        if (room == null) {
+            throw new ResourceNotFoundException("Room not found with id: " + roomId);
         }
-        
-        long days = ChronoUnit.DAYS.between(request.getCheckInDate(), request.getCheckOutDate());
-        BigDecimal totalAmount = room.getRoomType().getBasePrice().multiply(BigDecimal.valueOf(days));
-        
-        Reservation reservation = new Reservation();
-        reservation.setCustomer(customer);
-        reservation.setRoom(room);
-        reservation.setCheckInDate(request.getCheckInDate());
-        reservation.setCheckOutDate(request.getCheckOutDate());
-        reservation.setNumberOfGuests(request.getNumberOfGuests());
-        reservation.setTotalAmount(totalAmount);
-        reservation.setSpecialRequests(request.getSpecialRequests());
-        reservation.setStatus(Reservation.ReservationStatus.PENDING);
-        
-        Reservation savedReservation = reservationRepository.save(reservation);
-        
-        room.setStatus(Room.RoomStatus.RESERVED);
-        roomRepository.save(room);
-        
-        emailService.sendReservationConfirmation(customer.getUser().getEmail(), savedReservation);
-        
-        return savedReservation;
+        return room;
     }
     
-    @Transactional
-    public Reservation updateReservationStatus(Long id, Reservation.ReservationStatus status) {
-        Reservation reservation = getReservationById(id);
-        reservation.setStatus(status);
-        
-        if (status == Reservation.ReservationStatus.CANCELLED) {
-            Room room = reservation.getRoom();
-            room.setStatus(Room.RoomStatus.AVAILABLE);
-            roomRepository.save(room);
+    public void evictRoom(Long roomId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    rooms.invalidate(roomId);
+                }
+            });
+        } else {
+            rooms.invalidate(roomId);
         }
-        
-        return reservationRepository.save(reservation);
     }
     
-    @Transactional
-    public void deleteReservation(Long id) {
-        Reservation reservation = getReservationById(id);
-        Room room = reservation.getRoom();
-        room.setStatus(Room.RoomStatus.AVAILABLE);
-        roomRepository.save(room);
-        reservationRepository.delete(reservation);
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("roomTypes", describe(roomTypes.stats(), roomTypes.estimatedSize()));
+        stats.put("rooms", describe(rooms.stats(), rooms.estimatedSize()));
+        return stats;
+    }
+    
+    private Map<Long, RoomType> roomTypeCatalog() {
+        return roomTypes.get(ALL_TYPES, key -> roomTypeRepository.findAll().stream()
+                .collect(Collectors.toUnmodifiableMap(RoomType::getRoomTypeId, Function.identity())));
+    }
+    
+    private Map<String, Object> describe(CacheStats cacheStats, long size) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("size", size);
+        description.put("hits", cacheStats.hitCount());
+        description.put("misses", cacheStats.missCount());
+        description.put("evictions", cacheStats.evictionCount());
+        description.put("hitRate", cacheStats.hitRate());
+        return description;
     }
 }
 
-// PaymentService.java
+// AvailabilityIndex.java
 package com.hotel.service;
 
-import com.hotel.dto.PaymentRequest;
-import com.hotel.exception.ResourceNotFoundException;
-import com.hotel.model.Payment;
+import com.hotel.dto.RoomView;
+import com.hotel.dto.StayInterval;
 import com.hotel.model.Reservation;
 import com.hotel.model.Room;
-import com.hotel.repository.PaymentRepository;
 import com.hotel.repository.ReservationRepository;
 import com.hotel.repository.RoomRepository;
 import lombok.RequiredArgsConstructor;
-import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
-@Service
+// Mirrors RoomRepository.findAvailableRooms in memory, including its inclusive overlap rule.
+// Changes are applied after the owning transaction commits.
+@Slf4j
+@Component
 @RequiredArgsConstructor
-public class PaymentService {
+public class AvailabilityIndex {
+    
+    public static final Set<Reservation.ReservationStatus> BLOCKING_STATUSES = Collections.unmodifiableSet(
+            EnumSet.of(Reservation.ReservationStatus.CONFIRMED, Reservation.ReservationStatus.PENDING));
+    
+    // Whether a room can take bookings at all. RESERVED and OCCUPIED describe today only; the
+    // dates a room is taken come from its stays.
+    public static boolean isSellable(Room.RoomStatus status) {
+        return status != Room.RoomStatus.MAINTENANCE;
+    }
     
-    private final PaymentRepository paymentRepository;
-    private final ReservationRepository reservationRepository;
     private final RoomRepository roomRepository;
+    private final ReservationRepository reservationRepository;
+    
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+    private volatile Map<Long, RoomView> rooms = new ConcurrentSkipListMap<>();
+    private volatile Map<Long, RoomCalendar> calendars = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+    private final List<StayListener> listeners = new CopyOnWriteArrayList<>();
     
-    public List<Payment> getAllPayments() {
-        return paymentRepository.findAll();
+    // Notified after each committed change, and once more after every full rebuild
+    public interface StayListener {
+        void onStaysReloaded();
+        
+        void onStayChanged(Long roomId, StayInterval removed, StayInterval added);
+        
+        default void onRoomRecorded(RoomView previous, RoomView current) {
+        }
     }
     
-    public Payment getPaymentById(Long id) {
-        return paymentRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Payment not found with id: " + id));
+    public void addListener(StayListener listener) {
+        listeners.add(listener);
     }
     
-    @Transactional
-    public Payment processPayment(PaymentRequest request) {
-        Reservation reservation = reservationRepository.findById(request.getReservationId())
-                .orElseThrow(() -> new ResourceNotFoundException("Reservation not found"));
+    // Lets a listener re-read every stay without racing changes that are still being notified
+    public void reload(StayListener listener) {
+        rebuildLock.writeLock().lock();
+        try {
+            listener.onStaysReloaded();
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        rebuildLock.writeLock().lock();
+        try {
+            long started = System.nanoTime();
+            Map<Long, RoomView> loadedRooms = new ConcurrentSkipListMap<>();
+            roomRepository.findAllViews().forEach(room -> loadedRooms.put(room.getRoomId(), room));
+            
+            Map<Long, RoomCalendar> loadedCalendars = new ConcurrentHashMap<>();
+            List<StayInterval> stays = reservationRepository.findStays(BLOCKING_STATUSES);
+            for (StayInterval stay : stays) {
+                loadedCalendars.computeIfAbsent(stay.getRoomId(), id -> new RoomCalendar()).add(stay);
+            }
+            
+            rooms = loadedRooms;
+            calendars = loadedCalendars;
+            ready = true;
+            log.info("Availability index rebuilt: {} rooms, {} stays in {} ms",
+                    loadedRooms.size(), stays.size(), (System.nanoTime() - started) / 1_000_000);
+            listeners.forEach(StayListener::onStaysReloaded);
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    public RoomView getRoom(Long roomId) {
+        return rooms.get(roomId);
+    }
+    
+    public Collection<RoomView> getRooms() {
+        return Collections.unmodifiableCollection(rooms.values());
+    }
+    
+    public void forEachStay(Consumer<StayInterval> action) {
+        calendars.values().forEach(calendar -> calendar.forEach(action));
+    }
+    
+    public List<RoomView> findAvailableRooms(LocalDate checkIn, LocalDate checkOut) {
+        List<RoomView> available = new ArrayList<>();
+        for (RoomView room : rooms.values()) {
+            if (room.getStatus() == Room.RoomStatus.AVAILABLE && isFree(room.getRoomId(), checkIn, checkOut)) {
+                available.add(room);
+            }
+        }
+        return available;
+    }
+    
+    public boolean isFree(Long roomId, LocalDate checkIn, LocalDate checkOut) {
+        RoomCalendar calendar = calendars.get(roomId);
+        return calendar == null || !calendar.overlaps(checkIn, checkOut);
+    }
+    
+    public void recordRoom(Room room) {
+        RoomView view = RoomView.from(room);
+        afterCommit(() -> {
+            RoomView previous = rooms.put(view.getRoomId(), view);
+            listeners.forEach(listener -> listener.onRoomRecorded(previous, view));
+        });
+    }
+    
+    public void recordStay(Reservation reservation) {
+        StayInterval stay = new StayInterval(reservation.getReservationId(), reservation.getRoom().getRoomId(),
+                reservation.getCheckInDate(), reservation.getCheckOutDate());
+        boolean blocking = BLOCKING_STATUSES.contains(reservation.getStatus());
+        afterCommit(() -> {
+            RoomCalendar calendar = calendars.computeIfAbsent(stay.getRoomId(), id -> new RoomCalendar());
+            if (blocking) {
+                notifyChanged(stay.getRoomId(), calendar.add(stay), stay);
+            } else {
+                notifyChanged(stay.getRoomId(), calendar.remove(stay.getReservationId()), null);
+            }
+        });
+    }
+    
+    public void removeStay(Reservation reservation) {
+        Long reservationId = reservation.getReservationId();
+        Long roomId = reservation.getRoom().getRoomId();
+        afterCommit(() -> {
+            RoomCalendar calendar = calendars.get(roomId);
+            if (calendar != null) {
+                notifyChanged(roomId, calendar.remove(reservationId), null);
+            }
+        });
+    }
+    
+    private void notifyChanged(Long roomId, StayInterval removed, StayInterval added) {
+        if (removed != null || added != null) {
+            listeners.forEach(listener -> listener.onStayChanged(roomId, removed, added));
+        }
+    }
+    
+    public Map<String, Object> verify(LocalDate checkIn, LocalDate checkOut) {
+        Set<Long> expected = roomRepository.findAvailableRooms(checkIn, checkOut).stream()
+                .map(Room::getRoomId)
+                .collect(Collectors.toCollection(TreeSet::new));
+        Set<Long> actual = findAvailableRooms(checkIn, checkOut).stream()
+                .map(RoomView::getRoomId)
+                .collect(Collectors.toCollection(TreeSet::new));
         
-        Payment payment = new Payment();
-        payment.setReservation(reservation);
-        payment.setAmount(request.getAmount());
-        payment.setPaymentMethod(request.getPaymentMethod());
-        payment.setTransactionId(request.getTransactionId());
-        payment.setPaymentStatus(Payment.PaymentStatus.COMPLETED);
+        Set<Long> missing = new TreeSet<>(expected);
+        missing.removeAll(actual);
+        Set<Long> unexpected = new TreeSet<>(actual);
+        unexpected.removeAll(expected);
+        boolean consistent = missing.isEmpty() && unexpected.isEmpty();
+        if (!consistent) {
+            log.warn("Availability index differs from database for {} - {}: missing {}, unexpected {}",
+                    checkIn, checkOut, missing, unexpected);
+        }
         
-        Payment savedPayment = paymentRepository.save(payment);
+        Map<String, Object> report = new HashMap<>();
+        report.put("consistent", consistent);
+        report.put("ready", ready);
+        report.put("missingFromIndex", missing);
+        report.put("unexpectedInIndex", unexpected);
+        return report;
+    }
+    
+    private void afterCommit(Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(change);
+                }
+            });
+        } else {
+            apply(change);
+        }
+    }
+    
+    private void apply(Runnable change) {
+        rebuildLock.readLock().lock();
+        try {
+            change.run();
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+    
+    // A ReentrantLock rather than synchronized: a virtual thread waiting on a monitor pins its carrier
+    private static final class RoomCalendar {
+        private final TreeMap<LocalDate, List<StayInterval>> staysByCheckIn = new TreeMap<>();
+        private final Map<Long, StayInterval> staysById = new HashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private long longestStayDays;
         
-        reservation.setStatus(Reservation.ReservationStatus.CONFIRMED);
-        reservationRepository.save(reservation);
+        // Returns the stay this one replaced, if any
+        StayInterval add(StayInterval stay) {
+            lock.lock();
+            try {
+                StayInterval previous = remove(stay.getReservationId());
+                staysById.put(stay.getReservationId(), stay);
+                staysByCheckIn.computeIfAbsent(stay.getCheckInDate(), date -> new ArrayList<>(1)).add(stay);
+                longestStayDays = Math.max(longestStayDays,
+                        ChronoUnit.DAYS.between(stay.getCheckInDate(), stay.getCheckOutDate()));
+                return previous;
+            } finally {
+                lock.unlock();
+            }
+        }
         
-        Room room = reservation.getRoom();
-        room.setStatus(Room.RoomStatus.OCCUPIED);
-        roomRepository.save(room);
+        StayInterval remove(Long reservationId) {
+            lock.lock();
+            try {
+                StayInterval stay = staysById.remove(reservationId);
+                if (stay == null) {
+                    return null;
+                }
+                List<StayInterval> sameDay = staysByCheckIn.get(stay.getCheckInDate());
+                sameDay.remove(stay);
+                if (sameDay.isEmpty()) {
+                    staysByCheckIn.remove(stay.getCheckInDate());
+                }
+                return stay;
+            } finally {
+                lock.unlock();
+            }
+        }
         
-        return savedPayment;
+        void forEach(Consumer<StayInterval> action) {
+            lock.lock();
+            try {
+                staysById.values().forEach(action);
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        // Only stays that check in at most longestStayDays before checkIn can reach it.
+        boolean overlaps(LocalDate checkIn, LocalDate checkOut) {
+            lock.lock();
+            try {
+                if (checkOut.isBefore(checkIn.minusDays(longestStayDays))) {
+                    return false;
+                }
+                for (List<StayInterval> stays : staysByCheckIn
+                        .subMap(checkIn.minusDays(longestStayDays), true, checkOut, true).values()) {
+                    for (StayInterval stay : stays) {
+                        if (!stay.getCheckOutDate().isBefore(checkIn)) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
     }
 }
 
-// EmailService.java
+// InventoryMatrix.java
 package com.hotel.service;
 
-import com.hotel.model.Reservation;
+import com.hotel.dto.RoomView;
+import com.hotel.dto.StayInterval;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.stereotype.Service;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
 
-@Service
+// Booked-room counters per room type and day for the next horizonDays days, kept in step with the
+// availability index. Days follow the booking path's inclusive rule: a stay blocks its room from
+// check-in through the check-out day, and a window's availability is the fewest unbooked rooms of
+// the type on any of its days, from checkIn through checkOut: what can still be sold when rooms are
+// assigned at check-in. Only rooms AvailabilityIndex.isSellable accepts are counted, with their stays.
+// Counters are updated in place under writeLock and read without it; a search may miss a booking
+// that is being applied at the same moment, exactly as if it had run a moment earlier.
+@Slf4j
+@Component
 @RequiredArgsConstructor
-public class EmailService {
+public class InventoryMatrix implements AvailabilityIndex.StayListener {
     
-    private final JavaMailSender mailSender;
+    private final AvailabilityIndex availabilityIndex;
     
-    public void sendReservationConfirmation(String toEmail, Reservation reservation) {
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(toEmail);
-        message.setSubject("Reservation Confirmation - " + reservation.getReservationId());
-        message.setText(buildReservationEmail(reservation));
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Matrix matrix;
+    private volatile boolean ready;
+    private ExecutorService reloader;
+    
+    @Value("${hotel.inventory.horizon-days:730}")
+    private int horizonDays;
+    
+    // Notified after each change to the counters, outside writeLock; to is exclusive
+    public interface Listener {
+        void onInventoryReloaded();
         
-        try {
-            mailSender.send(message);
-        } catch (Exception e) {
-            System.out.println("Email send failed: " + e.getMessage());
+        void onInventoryChanged(Long roomTypeId, LocalDate from, LocalDate to);
+    }
+    
+    @PostConstruct
+    void init() {
+        matrix = new Matrix(LocalDate.now(), horizonDays, Map.of(), new int[0], new int[0][]);
+        reloader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "inventory-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        availabilityIndex.addListener(this);
+    }
+    
+    @PreDestroy
+    void stop() {
+        reloader.shutdownNow();
+    }
+    
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    public int totalRooms(Long roomTypeId) {
+        Matrix current = matrix;
+        Integer slot = current.slots.get(roomTypeId);
+        return slot == null ? 0 : current.rooms[slot];
+    }
+    
+    public int available(Long roomTypeId, LocalDate checkIn, LocalDate checkOut) {
+        Matrix current = matrix;
+        long from = ChronoUnit.DAYS.between(current.start, checkIn);
+        long to = ChronoUnit.DAYS.between(current.start, checkOut);
+        if (from < 0 || to >= current.days) {
+            throw new RuntimeException("Search window must lie between " + current.start + " and "
+                    + current.start.plusDays(current.days - 1));
+        }
+        Integer slot = current.slots.get(roomTypeId);
+        if (slot == null) {
+            return 0;
         }
+        int[] booked = current.booked[slot];
+        int peak = 0;
+        for (int day = (int) from; day <= to; day++) {
+            peak = Math.max(peak, booked[day]);
+        }
+        return Math.max(0, current.rooms[slot] - peak);
     }
     
-    private String buildReservationEmail(Reservation reservation) {
-        return String.format(
-            "Dear %s,\n\n" +
-            "Your reservation has been confirmed!\n\n" +
-            "Reservation ID: %d\n" +
-            "Room Number: %s\n" +
-            "Check-in: %s\n" +
-            "Check-out: %s\n" +
-            "Total Amount: ₹%.2f\n\n" +
-            "Thank you for choosing our hotel!\n\n" +
-            "Best regards,\n" +
-            "Hotel Management",
-            reservation.getCustomer().getFirstName(),
-            reservation.getReservationId(),
-            reservation.getRoom().getRoomNumber(),
-            reservation.getCheckInDate(),
-            reservation.getCheckOutDate(),
-            reservation.getTotalAmount()
-        );
+    // Share of the type's sellable rooms booked on the day; zero outside the window
+    public double occupancy(Long roomTypeId, LocalDate day) {
+        Matrix current = matrix;
+        Integer slot = current.slots.get(roomTypeId);
+        long index = ChronoUnit.DAYS.between(current.start, day);
+        if (slot == null || index < 0 || index >= current.days || current.rooms[slot] == 0) {
+            return 0.0;
+        }
+        return (double) current.booked[slot][(int) index] / current.rooms[slot];
     }
-}
-
-// ============================================
-// CONTROLLER CLASSES
-// ============================================
-
-// AuthController.java
-package com.hotel.controller;
-
-import com.hotel.dto.LoginRequest;
-import com.hotel.dto.RegisterRequest;
-import com.hotel.model.User;
-import com.hotel.service.UserService;
-import jakarta.validation.Valid;
-import lombok.RequiredArgsConstructor;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.*;
-import java.util.HashMap;
-import java.util.Map;
-
-@RestController
-@RequestMapping("/api/auth")
-@RequiredArgsConstructor
-@CrossOrigin(origins = "*")
-public class AuthController {
     
-    private final UserService userService;
+    // Moves the window forward so that day 0 is always today
+    @Scheduled(cron = "${hotel.inventory.roll-cron:0 0 0 * * *}")
+    public void roll() {
+        availabilityIndex.reload(this);
+    }
     
-    @PostMapping("/register")
-    public ResponseEntity<?> register(@Valid @RequestBody RegisterRequest request) {
+    @Override
+    public void onStaysReloaded() {
+        writeLock.lock();
         try {
-            User user = userService.registerUser(request);
-            Map<String, Object> response = new HashMap<>();
-            response.put("message", "User registered successfully");
-            response.put("userId", user.getUserId());
-            return ResponseEntity.status(HttpStatus.CREATED).body(response);
-        } catch (Exception e) {
-            return ResponseEntity.badRequest().body(e.getMessage());
+            long started = System.nanoTime();
+            Map<Long, Integer> slots = new HashMap<>();
+            for (RoomView room : availabilityIndex.getRooms()) {
+                slots.putIfAbsent(room.getRoomTypeId(), slots.size());
+            }
+            Matrix loaded = new Matrix(LocalDate.now(), horizonDays, slots, new int[slots.size()],
+                    new int[slots.size()][horizonDays]);
+            for (RoomView room : availabilityIndex.getRooms()) {
+                if (AvailabilityIndex.isSellable(room.getStatus())) {
+                    loaded.rooms[slots.get(room.getRoomTypeId())]++;
+                }
+            }
+            int[] stays = new int[1];
+            availabilityIndex.forEachStay(stay -> {
+                RoomView room = availabilityIndex.getRoom(stay.getRoomId());
+                if (room != null && AvailabilityIndex.isSellable(room.getStatus())) {
+                    loaded.book(slots.get(room.getRoomTypeId()), stay, 1);
+                    stays[0]++;
+                }
+            });
+            matrix = loaded;
+            ready = true;
+            log.info("Inventory matrix rebuilt: {} room types x {} days, {} stays in {} ms",
+                    slots.size(), horizonDays, stays[0], (System.nanoTime() - started) / 1_000_000);
+        } finally {
+            writeLock.unlock();
         }
+        listeners.forEach(Listener::onInventoryReloaded);
     }
     
-    @PostMapping("/login")
-    public ResponseEntity<?> login(@Valid @RequestBody LoginRequest request) {
+    @Override
+    public void onStayChanged(Long roomId, StayInterval removed, StayInterval added) {
+        RoomView room = availabilityIndex.getRoom(roomId);
+        if (room == null || !AvailabilityIndex.isSellable(room.getStatus())) {
+            return;
+        }
+        int from;
+        int to;
+        LocalDate start;
+        writeLock.lock();
+        try {
+            Matrix current = matrix;
+            Integer slot = current.slots.get(room.getRoomTypeId());
+            if (slot == null) {
+                return;
+            }
+            from = current.days;
+            to = 0;
+            if (removed != null && current.book(slot, removed, -1)) {
+                from = Math.min(from, current.index(removed.getCheckInDate()));
+                to = Math.max(to, current.index(removed.getCheckOutDate()) + 1);
+            }
+            if (added != null && current.book(slot, added, 1)) {
+                from = Math.min(from, current.index(added.getCheckInDate()));
+                to = Math.max(to, current.index(added.getCheckOutDate()) + 1);
+            }
+            start = current.start;
+        } finally {
+            writeLock.unlock();
+        }
+        if (from < to) {
+            LocalDate first = start.plusDays(from);
+            LocalDate last = start.plusDays(to);
+            listeners.forEach(listener -> listener.onInventoryChanged(room.getRoomTypeId(), first, last));
+        }
+    }
+    
+    @Override
+    public void onRoomRecorded(RoomView previous, RoomView current) {
+        boolean sellable = AvailabilityIndex.isSellable(current.getStatus());
+        if (previous != null) {
+            if (previous.getRoomTypeId().equals(current.getRoomTypeId())
+                    && AvailabilityIndex.isSellable(previous.getStatus()) == sellable) {
+                return;
+            }
+            // The room's stays move in or out of the counters with it. This runs inside the index's
+            // change notification, so the full rebuild that does that safely is started afterwards;
+            // it is rare (maintenance or a type change) and costs one pass over the stays. Until it
+            // finishes the counters are wrong, so searches are refused rather than answered.
+            ready = false;
+            CompletableFuture.runAsync(() -> availabilityIndex.reload(this), reloader)
+                    .whenComplete((result, failure) -> {
+                        if (failure != null) {
+                            log.error("Inventory matrix reload failed; searches stay unavailable until the"
+                                    + " next reload", failure);
+                        }
+                    });
+            return;
+        }
+        if (!sellable) {
+            return;
+        }
+        LocalDate start;
+        int days;
+        writeLock.lock();
+        try {
+            Integer slot = matrix.slots.get(current.getRoomTypeId());
+            if (slot == null) {
+                matrix = matrix.withType(current.getRoomTypeId());
+                slot = matrix.slots.get(current.getRoomTypeId());
+            }
+            matrix.rooms[slot]++;
+            start = matrix.start;
+            days = matrix.days;
+        } finally {
+            writeLock.unlock();
+        }
+        // Every day's occupancy moves with the room count
+        listeners.forEach(listener -> listener.onInventoryChanged(current.getRoomTypeId(), start,
+                start.plusDays(days)));
+    }
+    
+    private static final class Matrix {
+        final LocalDate start;
+        final int days;
+        final Map<Long, Integer> slots;
+        final int[] rooms;
+        final int[][] booked;
+        
+        Matrix(LocalDate start, int days, Map<Long, Integer> slots, int[] rooms, int[][] booked) {
+            this.start = start;
+            this.days = days;
+            this.slots = slots;
+            this.rooms = rooms;
+            this.booked = booked;
+        }
+        
+        int index(LocalDate date) {
+            return (int) Math.max(0, Math.min(days - 1, ChronoUnit.DAYS.between(start, date)));
+        }
+        
+        // Returns whether any day of the stay, check-out day included, falls inside the window
+        boolean book(int slot, StayInterval stay, int delta) {
+            long first = ChronoUnit.DAYS.between(start, stay.getCheckInDate());
+            long last = ChronoUnit.DAYS.between(start, stay.getCheckOutDate());
+            if (last < 0 || first >= days) {
+                return false;
+            }
+            int[] counts = booked[slot];
+            for (int day = index(stay.getCheckInDate()); day <= index(stay.getCheckOutDate()); day++) {
+                counts[day] += delta;
+            }
+            return true;
+        }
+        
+        Matrix withType(Long roomTypeId) {
+            Map<Long, Integer> grown = new HashMap<>(slots);
+            grown.put(roomTypeId, slots.size());
+            int[][] grownBooked = Arrays.copyOf(booked, booked.length + 1);
+            grownBooked[booked.length] = new int[days];
+            return new Matrix(start, days, grown, Arrays.copyOf(rooms, rooms.length + 1), grownBooked);
+        }
+    }
+}
+
+// CalendarService.java
+package com.hotel.service;
+
+import com.hotel.dto.AvailabilityCalendar;
+import com.hotel.dto.CalendarRow;
+import com.hotel.dto.RoomView;
+import com.hotel.dto.StayInterval;
+import com.hotel.repository.ReservationRepository;
+import com.hotel.repository.RoomRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Room x day booking grid for the front desk. A day is booked when a blocking stay covers it, check-out
+// day included, which is the same inclusive rule findAvailableRooms applies. Room status is returned
+// alongside each row rather than painted into it, since it is a present-day flag.
+@Service
+@RequiredArgsConstructor
+public class CalendarService {
+    
+    private final RoomRepository roomRepository;
+    private final ReservationRepository reservationRepository;
+    
+    @Value("${hotel.calendar.max-days:366}")
+    private int maxDays;
+    
+    // Two queries whatever the window: the rooms, then every stay overlapping it
+    @Transactional(readOnly = true)
+    public AvailabilityCalendar getCalendar(LocalDate from, int days, Long roomTypeId) {
+        if (days < 1 || days > maxDays) {
+            throw new RuntimeException("Calendar window must be between 1 and " + maxDays + " days");
+        }
+        LocalDate to = from.plusDays(days - 1);
+        
+        Map<Long, byte[]> grid = new LinkedHashMap<>();
+        List<RoomView> rooms = new ArrayList<>();
+        for (RoomView room : roomRepository.findAllViews()) {
+            if (roomTypeId == null || roomTypeId.equals(room.getRoomTypeId())) {
+                rooms.add(room);
+                grid.put(room.getRoomId(), new byte[(days + 7) / 8]);
+            }
+        }
+        
+        for (StayInterval stay : reservationRepository.findStaysBetween(from, to, roomTypeId,
+                AvailabilityIndex.BLOCKING_STATUSES)) {
+            byte[] row = grid.get(stay.getRoomId());
+            if (row == null) {
+                continue;
+            }
+            long first = Math.max(0, ChronoUnit.DAYS.between(from, stay.getCheckInDate()));
+            long last = Math.min(days - 1, ChronoUnit.DAYS.between(from, stay.getCheckOutDate()));
+            for (int day = (int) first; day <= last; day++) {
+                row[day >>> 3] |= (byte) (1 << (day & 7));
+            }
+        }
+        
+        Base64.Encoder encoder = Base64.getEncoder();
+        List<CalendarRow> rows = new ArrayList<>(rooms.size());
+        for (RoomView room : rooms) {
+            rows.add(new CalendarRow(room.getRoomId(), room.getRoomNumber(), room.getRoomTypeId(),
+                    room.getStatus(), encoder.encodeToString(grid.get(room.getRoomId()))));
+        }
+        return new AvailabilityCalendar(from, days, AvailabilityCalendar.ENCODING, rows);
+    }
+}
+
+// BookingMetrics.java
+package com.hotel.service;
+
+import com.hotel.exception.BookingConflictException;
+import com.hotel.exception.InvalidStateTransitionException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Stage timers for the booking and payment pipelines, published as hotel.booking.stage
+// tagged with operation and stage; the "total" stage covers the whole call and is also
+// tagged with its outcome: success, conflict (anything answered with 409) or error.
+@Component
+@RequiredArgsConstructor
+public class BookingMetrics {
+    
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private Counter conflicts;
+    private Counter retries;
+    
+    @PostConstruct
+    void init() {
+        conflicts = Counter.builder("hotel.booking.conflicts")
+                .description("Bookings rejected because the room was already taken")
+                .register(meterRegistry);
+        retries = Counter.builder("hotel.booking.retries")
+                .description("Booking transactions retried after a concurrent update")
+                .register(meterRegistry);
+    }
+    
+    // Wraps the whole call, transaction included: reservation ids come from a sequence, so their
+    // INSERTs only run when the transaction flushes at commit, and that time is the "commit" stage
+    public <T> T record(String operation, Function<Stages, T> call) {
+        Stages stages = new Stages(operation);
+        String outcome = "error";
+        try {
+            T result = call.apply(stages);
+            if (stages.attempts > 0) {
+                stages.lap("commit");
+            }
+            outcome = "success";
+            return result;
+        } catch (BookingConflictException | InvalidStateTransitionException | OptimisticLockingFailureException e) {
+            outcome = "conflict";
+            throw e;
+        } finally {
+            stages.finish(outcome);
+        }
+    }
+    
+    public void recordConflict() {
+        conflicts.increment();
+    }
+    
+    public void recordRetry() {
+        retries.increment();
+    }
+    
+    private Timer timer(String operation, String stage, String outcome) {
+        return timers.computeIfAbsent(operation + ':' + stage + ':' + outcome,
+                key -> Timer.builder("hotel.booking.stage")
+                        .tag("operation", operation)
+                        .tag("stage", stage)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry));
+    }
+    
+    // Each lap measures the time since the previous lap, so stages add up to the total. Laps are
+    // recorded when the call finishes, tagged with its outcome; a stage repeated by a retry is summed.
+    public final class Stages {
+        private final String operation;
+        private final long startedAt = System.nanoTime();
+        private final Map<String, Long> laps = new LinkedHashMap<>();
+        private long lastLap = startedAt;
+        private int attempts;
+        
+        private Stages(String operation) {
+            this.operation = operation;
+        }
+        
+        // Called first in each transaction attempt: "begin" is taking a connection, "retry" a failed
+        // attempt plus its backoff
+        public void beginAttempt() {
+            lap(attempts++ == 0 ? "begin" : "retry");
+        }
+        
+        public void lap(String stage) {
+            long now = System.nanoTime();
+            laps.merge(stage, now - lastLap, Long::sum);
+            lastLap = now;
+        }
+        
+        private void finish(String outcome) {
+            laps.forEach((stage, nanos) -> timer(operation, stage, outcome).record(nanos, TimeUnit.NANOSECONDS));
+            timer(operation, "total", outcome).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+}
+
+// BookingEngine.java
+package com.hotel.service;
+
+import com.hotel.exception.BookingConflictException;
+import com.hotel.exception.ResourceNotFoundException;
+import com.hotel.model.Room;
+import com.hotel.repository.ReservationRepository;
+import com.hotel.repository.RoomRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Serializes bookings per room: the stripe lock is taken inside the booking transaction and
+// released only after it completes, so the availability index already reflects a committed
+// booking by the time the next booking for that room gets the lock.
+@Component
+@RequiredArgsConstructor
+public class BookingEngine {
+    
+    private static final int STRIPES = 256;
+    
+    private final RoomRepository roomRepository;
+    private final ReservationRepository reservationRepository;
+    private final AvailabilityIndex availabilityIndex;
+    private final BookingMetrics bookingMetrics;
+    private final ReentrantLock[] stripes = createStripes();
+    
+    @Value("${booking.database-lock:false}")
+    private boolean databaseLock;
+    
+    public Room lockRoom(Long roomId) {
+        requireTransaction();
+        lockStripe(stripeOf(roomId));
+        
+        return (databaseLock ? roomRepository.findByIdForUpdate(roomId) : roomRepository.findById(roomId))
+                .orElseThrow(() -> new ResourceNotFoundException("Room not found"));
+    }
+    
+    // Stripes are taken in ascending order, so groups that share rooms cannot deadlock
+    public List<Room> lockRooms(List<Long> roomIds) {
+        requireTransaction();
+        roomIds.stream().mapToInt(BookingEngine::stripeOf).distinct().sorted().forEach(this::lockStripe);
+        
+        List<Room> rooms = databaseLock ? roomRepository.findAllByIdForUpdate(roomIds)
+                : roomRepository.findByRoomIdIn(roomIds);
+        if (rooms.size() < roomIds.size()) {
+            Set<Long> found = new HashSet<>();
+            rooms.forEach(room -> found.add(room.getRoomId()));
+            throw new ResourceNotFoundException("Rooms not found: "
+                    + roomIds.stream().filter(id -> !found.contains(id)).toList());
+        }
+        return rooms;
+    }
+    
+    public void checkAvailable(Room room, LocalDate checkIn, LocalDate checkOut) {
+        if (!AvailabilityIndex.isSellable(room.getStatus())) {
+            bookingMetrics.recordConflict();
+            throw new BookingConflictException("Room " + room.getRoomNumber() + " is under maintenance");
+        }
+        boolean free = !availabilityIndex.isReady() || availabilityIndex.isFree(room.getRoomId(), checkIn, checkOut);
+        if (free && (databaseLock || !availabilityIndex.isReady())) {
+            free = !reservationRepository.existsOverlapping(room.getRoomId(), checkIn, checkOut,
+                    AvailabilityIndex.BLOCKING_STATUSES);
+        }
+        if (!free) {
+            bookingMetrics.recordConflict();
+            throw new BookingConflictException("Room " + room.getRoomNumber() + " is already booked between "
+                    + checkIn + " and " + checkOut);
+        }
+    }
+    
+    public void checkAvailable(List<Room> rooms, LocalDate checkIn, LocalDate checkOut) {
+        List<String> unsellable = rooms.stream()
+                .filter(room -> !AvailabilityIndex.isSellable(room.getStatus()))
+                .map(Room::getRoomNumber)
+                .toList();
+        if (!unsellable.isEmpty()) {
+            bookingMetrics.recordConflict();
+            throw new BookingConflictException("Rooms " + unsellable + " are under maintenance");
+        }
+        boolean indexReady = availabilityIndex.isReady();
+        List<Room> taken = new ArrayList<>();
+        if (indexReady) {
+            for (Room room : rooms) {
+                if (!availabilityIndex.isFree(room.getRoomId(), checkIn, checkOut)) {
+                    taken.add(room);
+                }
+            }
+        }
+        if (taken.isEmpty() && (databaseLock || !indexReady)) {
+            Set<Long> overlapping = new HashSet<>(reservationRepository.findOverlappingRoomIds(
+                    rooms.stream().map(Room::getRoomId).toList(), checkIn, checkOut,
+                    AvailabilityIndex.BLOCKING_STATUSES));
+            for (Room room : rooms) {
+                if (overlapping.contains(room.getRoomId())) {
+                    taken.add(room);
+                }
+            }
+        }
+        if (!taken.isEmpty()) {
+            bookingMetrics.recordConflict();
+            throw new BookingConflictException("Rooms " + taken.stream().map(Room::getRoomNumber).toList()
+                    + " are already booked between " + checkIn + " and " + checkOut);
+        }
+    }
+    
+    private static int stripeOf(Long roomId) {
+        return Math.floorMod(roomId.hashCode(), STRIPES);
+    }
+    
+    private void lockStripe(int stripe) {
+        ReentrantLock lock = stripes[stripe];
+        lock.lock();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.unlock();
+            }
+        });
+    }
+    
+    private static void requireTransaction() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Rooms can only be locked inside a transaction");
+        }
+    }
+    
+    private static ReentrantLock[] createStripes() {
+        ReentrantLock[] locks = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+}
+
+// ReservationService.java
+package com.hotel.service;
+
+import com.hotel.dto.ChangeEvent;
+import com.hotel.dto.GroupReservationRequest;
+import com.hotel.dto.KeysetPage;
+import com.hotel.dto.ReservationRequest;
+import com.hotel.dto.ReservationView;
+import com.hotel.exception.ResourceNotFoundException;
+import com.hotel.model.Customer;
+import com.hotel.model.Reservation;
+import com.hotel.model.Room;
+import com.hotel.pricing.PricingEngine;
+import com.hotel.repository.CustomerRepository;
+import com.hotel.repository.ReservationRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+public class ReservationService {
+    
+    private final ReservationRepository reservationRepository;
+    private final CustomerRepository customerRepository;
+    private final EmailService emailService;
+    private final RoomService roomService;
+    private final AvailabilityIndex availabilityIndex;
+    private final BookingEngine bookingEngine;
+    private final PricingEngine pricingEngine;
+    private final BookingMetrics bookingMetrics;
+    private final RollupService rollupService;
+    private final OptimisticRetry optimisticRetry;
+    private final ApplicationEventPublisher eventPublisher;
+    
+    public KeysetPage<ReservationView> getReservations(Long after, int limit, Reservation.ReservationStatus status,
+                                                       LocalDate from, LocalDate to) {
+        int pageSize = KeysetPage.clampLimit(limit);
+        List<ReservationView> reservations = reservationRepository.findPage(after == null ? 0L : after,
+                status, from, to, PageRequest.of(0, pageSize));
+        return KeysetPage.of(reservations, pageSize, ReservationView::getReservationId);
+    }
+    
+    @Transactional(readOnly = true)
+    public void exportReservations(Reservation.ReservationStatus status, LocalDate from, LocalDate to,
+                                   Consumer<ReservationView> sink) {
+        try (Stream<ReservationView> reservations = reservationRepository.streamAll(status, from, to)) {
+            reservations.forEach(sink);
+        }
+    }
+    
+    public Reservation getReservationById(Long id) {
+        return reservationRepository.findWithDetailsByReservationId(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Reservation not found with id: " + id));
+    }
+    
+    public List<ReservationView> getReservationsByCustomerId(Long customerId) {
+        return reservationRepository.findViewsByCustomerId(customerId);
+    }
+    
+    public Reservation createReservation(Long userId, ReservationRequest request) {
+        return bookingMetrics.record("createReservation",
+                stages -> optimisticRetry.execute(() -> book(userId, request, stages)));
+    }
+    
+    private Reservation book(Long userId, ReservationRequest request, BookingMetrics.Stages stages) {
+        stages.beginAttempt();
+        Customer customer = customerRepository.findByUser_UserId(userId)
+                .orElseThrow(() -> new ResourceNotFoundException("Customer not found"));
+        stages.lap("customer_lookup");
+        
+        if (request.getCheckOutDate().isBefore(request.getCheckInDate())) {
+            throw new RuntimeException("Check-out date must be after check-in date");
+        }
+        stages.lap("validation");
+        
+        Room room = bookingEngine.lockRoom(request.getRoomId());
+        stages.lap("room_lock");
+        bookingEngine.checkAvailable(room, request.getCheckInDate(), request.getCheckOutDate());
+        stages.lap("availability_check");
+        
+        Reservation reservation = newReservation(customer, room, request.getCheckInDate(),
+                request.getCheckOutDate(), request.getNumberOfGuests(), request.getSpecialRequests());
+        stages.lap("pricing");
+        
+        Reservation savedReservation = reservationRepository.save(reservation);
+        availabilityIndex.recordStay(savedReservation);
+        eventPublisher.publishEvent(ChangeEvent.of(savedReservation, ChangeEvent.Kind.CREATED));
+        stages.lap("persist");
+        
+        roomService.setRoomStatus(room, Room.RoomStatus.RESERVED);
+        stages.lap("room_status_update");
+        
+        emailService.sendReservationConfirmation(customer.getUser().getEmail(), savedReservation);
+        stages.lap("email_enqueue");
+        return savedReservation;
+    }
+    
+    public List<Reservation> createGroupReservation(Long userId, GroupReservationRequest request) {
+        return bookingMetrics.record("createGroupReservation",
+                stages -> optimisticRetry.execute(() -> bookGroup(userId, request, stages)));
+    }
+    
+    private List<Reservation> bookGroup(Long userId, GroupReservationRequest request, BookingMetrics.Stages stages) {
+        stages.beginAttempt();
+        Customer customer = customerRepository.findByUser_UserId(userId)
+                .orElseThrow(() -> new ResourceNotFoundException("Customer not found"));
+        stages.lap("customer_lookup");
+        
+        if (request.getCheckOutDate().isBefore(request.getCheckInDate())) {
+            throw new RuntimeException("Check-out date must be after check-in date");
+        }
+        List<Long> roomIds = request.getRoomIds().stream().distinct().sorted().toList();
+        if (roomIds.size() < request.getRoomIds().size()) {
+            throw new RuntimeException("A room can only appear once in a group booking");
+        }
+        stages.lap("validation");
+        
+        List<Room> rooms = bookingEngine.lockRooms(roomIds);
+        stages.lap("room_lock");
+        bookingEngine.checkAvailable(rooms, request.getCheckInDate(), request.getCheckOutDate());
+        stages.lap("availability_check");
+        
+        List<Reservation> reservations = new ArrayList<>(rooms.size());
+        for (Room room : rooms) {
+            reservations.add(newReservation(customer, room, request.getCheckInDate(), request.getCheckOutDate(),
+                    request.getNumberOfGuests(), request.getSpecialRequests()));
+        }
+        stages.lap("pricing");
+        
+        List<Reservation> savedReservations = reservationRepository.saveAll(reservations);
+        for (Reservation savedReservation : savedReservations) {
+            availabilityIndex.recordStay(savedReservation);
+            eventPublisher.publishEvent(ChangeEvent.of(savedReservation, ChangeEvent.Kind.CREATED));
+        }
+        stages.lap("persist");
+        
+        // The bulk update flushes the batched inserts before it runs, so they are timed here
+        roomService.setRoomsStatus(rooms, Room.RoomStatus.RESERVED);
+        stages.lap("room_status_update");
+        
+        emailService.sendGroupReservationConfirmation(customer.getUser().getEmail(), savedReservations);
+        stages.lap("email_enqueue");
+        return savedReservations;
+    }
+    
+    private Reservation newReservation(Customer customer, Room room, LocalDate checkIn, LocalDate checkOut,
+                                       Integer numberOfGuests, String specialRequests) {
+        Reservation reservation = new Reservation();
+        reservation.setCustomer(customer);
+        reservation.setRoom(room);
+        reservation.setCheckInDate(checkIn);
+        reservation.setCheckOutDate(checkOut);
+        reservation.setNumberOfGuests(numberOfGuests);
+        // Reading the id leaves the lazy room type proxy uninitialised
+        reservation.setTotalAmount(pricingEngine.quote(room.getRoomType().getRoomTypeId(), checkIn, checkOut));
+        reservation.setSpecialRequests(specialRequests);
+        reservation.setStatus(Reservation.ReservationStatus.PENDING);
+        return reservation;
+    }
+    
+    public Reservation updateReservationStatus(Long id, Reservation.ReservationStatus status) {
+        return optimisticRetry.execute(() -> changeStatus(id, status));
+    }
+    
+    public void deleteReservation(Long id) {
+        optimisticRetry.execute(() -> {
+            Reservation reservation = getReservationById(id);
+            roomService.setRoomStatus(reservation.getRoom(), Room.RoomStatus.AVAILABLE);
+            rollupService.onDelete(reservation);
+            reservationRepository.delete(reservation);
+            availabilityIndex.removeStay(reservation);
+            eventPublisher.publishEvent(ChangeEvent.of(reservation, ChangeEvent.Kind.DELETED));
+            return null;
+        });
+    }
+    
+    // Repeating the current status is a no-op, so a retried request does not fail on the transition table.
+    // No transition leads back into a blocking status, so the room never needs re-checking here.
+    private Reservation changeStatus(Long id, Reservation.ReservationStatus status) {
+        Reservation reservation = getReservationById(id);
+        Reservation.ReservationStatus previous = reservation.getStatus();
+        if (previous == status) {
+            return reservation;
+        }
+        reservation.transitionTo(status);
+        
+        if (status == Reservation.ReservationStatus.CANCELLED) {
+            roomService.setRoomStatus(reservation.getRoom(), Room.RoomStatus.AVAILABLE);
+        }
+        
+        Reservation savedReservation = reservationRepository.save(reservation);
+        availabilityIndex.recordStay(savedReservation);
+        rollupService.onStatusChange(savedReservation, previous);
+        eventPublisher.publishEvent(ChangeEvent.of(savedReservation, ChangeEvent.Kind.UPDATED));
+        return savedReservation;
+    }
+}
+
+// PaymentService.java
+package com.hotel.service;
+
+import com.hotel.dto.ChangeEvent;
+import com.hotel.dto.IdempotentPayment;
+import com.hotel.dto.KeysetPage;
+import com.hotel.dto.PaymentRequest;
+import com.hotel.dto.PaymentView;
+import com.hotel.exception.ResourceNotFoundException;
+import com.hotel.model.Payment;
+import com.hotel.model.Reservation;
+import com.hotel.model.Room;
+import com.hotel.repository.PaymentRepository;
+import com.hotel.repository.ReservationRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+public class PaymentService {
+    
+    private final PaymentRepository paymentRepository;
+    private final ReservationRepository reservationRepository;
+    private final RoomService roomService;
+    private final AvailabilityIndex availabilityIndex;
+    private final BookingMetrics bookingMetrics;
+    private final RollupService rollupService;
+    private final PaymentIdempotencyStore idempotencyStore;
+    private final OptimisticRetry optimisticRetry;
+    private final ApplicationEventPublisher eventPublisher;
+    
+    public KeysetPage<PaymentView> getPayments(Long after, int limit, Payment.PaymentStatus status,
+                                               LocalDate from, LocalDate to) {
+        int pageSize = KeysetPage.clampLimit(limit);
+        List<PaymentView> payments = paymentRepository.findPage(after == null ? 0L : after,
+                status, startOf(from), endOf(to), PageRequest.of(0, pageSize));
+        return KeysetPage.of(payments, pageSize, PaymentView::getPaymentId);
+    }
+    
+    @Transactional(readOnly = true)
+    public void exportPayments(Payment.PaymentStatus status, LocalDate from, LocalDate to,
+                               Consumer<PaymentView> sink) {
+        try (Stream<PaymentView> payments = paymentRepository.streamAll(status, startOf(from), endOf(to))) {
+            payments.forEach(sink);
+        }
+    }
+    
+    public PaymentView getPaymentById(Long id) {
+        return paymentRepository.findViewById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Payment not found with id: " + id));
+    }
+    
+    // Runs outside a transaction: the idempotency store opens one around the charge and its key
+    public IdempotentPayment processPayment(PaymentRequest request, String idempotencyKey) {
+        return bookingMetrics.record("processPayment", stages -> idempotencyStore.execute(idempotencyKey, request,
+                () -> PaymentView.from(charge(request, stages))));
+    }
+    
+    public Payment processPayment(PaymentRequest request) {
+        return bookingMetrics.record("processPayment",
+                stages -> optimisticRetry.execute(() -> charge(request, stages)));
+    }
+    
+    // Further payments against a CONFIRMED reservation leave its status alone
+    private Payment charge(PaymentRequest request, BookingMetrics.Stages stages) {
+        stages.beginAttempt();
+        Reservation reservation = reservationRepository.findLockedByReservationId(request.getReservationId())
+                .orElseThrow(() -> new ResourceNotFoundException("Reservation not found"));
+        stages.lap("reservation_lookup");
+        
+        Reservation.ReservationStatus previous = reservation.getStatus();
+        if (previous != Reservation.ReservationStatus.CONFIRMED) {
+            reservation.transitionTo(Reservation.ReservationStatus.CONFIRMED);
+        }
+        stages.lap("validation");
+        
+        Payment payment = new Payment();
+        payment.setReservation(reservation);
+        payment.setAmount(request.getAmount());
+        payment.setPaymentMethod(request.getPaymentMethod());
+        payment.setTransactionId(request.getTransactionId());
+        payment.setPaymentStatus(Payment.PaymentStatus.COMPLETED);
+        
+        Payment savedPayment = paymentRepository.save(payment);
+        eventPublisher.publishEvent(ChangeEvent.of(savedPayment, ChangeEvent.Kind.CREATED));
+        stages.lap("persist");
+        
+        availabilityIndex.recordStay(reservationRepository.save(reservation));
+        if (previous != Reservation.ReservationStatus.CONFIRMED) {
+            eventPublisher.publishEvent(ChangeEvent.of(reservation, ChangeEvent.Kind.UPDATED));
+        }
+        stages.lap("reservation_update");
+        
+        rollupService.onPayment(savedPayment);
+        rollupService.onStatusChange(reservation, previous);
+        stages.lap("rollups");
+        
+        roomService.setRoomStatus(reservation.getRoom(), Room.RoomStatus.OCCUPIED);
+        stages.lap("room_status_update");
+        return savedPayment;
+    }
+    
+    private static LocalDateTime startOf(LocalDate date) {
+        return date == null ? null : date.atStartOfDay();
+    }
+    
+    private static LocalDateTime endOf(LocalDate date) {
+        return date == null ? null : date.plusDays(1).atStartOfDay();
+    }
+}
+
+// OptimisticRetry.java
+package com.hotel.service;
+
+import com.hotel.exception.BookingConflictException;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.OptimisticLockException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+// Runs a unit of work in its own transaction and re-runs it from scratch when a @Version check
+// fails, so lost updates are caught without holding row locks for the whole transaction.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OptimisticRetry {
+    
+    private final PlatformTransactionManager transactionManager;
+    private final BookingMetrics bookingMetrics;
+    private TransactionTemplate transactionTemplate;
+    
+    @Value("${booking.optimistic-retry.max-attempts:3}")
+    private int maxAttempts;
+    
+    @Value("${booking.optimistic-retry.backoff-ms:20}")
+    private long backoffMillis;
+    
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+    
+    public <T> T execute(Supplier<T> work) {
+        // Inside a caller's transaction a retry would reuse its stale persistence context
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return work.get();
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> work.get());
+            } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+                if (attempt >= maxAttempts) {
+                    throw new BookingConflictException("The reservation was modified concurrently, please retry");
+                }
+                bookingMetrics.recordRetry();
+                log.debug("Optimistic lock failure on attempt {}, retrying", attempt);
+                backoff(attempt);
+            }
+        }
+    }
+    
+    // Jittered so that the transactions that collided do not collide again
+    private void backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(backoffMillis * attempt + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BookingConflictException("Interrupted while retrying a concurrent update");
+        }
+    }
+}
+
+// PaymentIdempotencyStore.java
+package com.hotel.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hotel.dto.IdempotentPayment;
+import com.hotel.dto.PaymentRequest;
+import com.hotel.dto.PaymentView;
+import com.hotel.exception.InvalidIdempotencyKeyException;
+import com.hotel.exception.ResourceNotFoundException;
+import com.hotel.model.PaymentIdempotencyKey;
+import com.hotel.repository.PaymentIdempotencyKeyRepository;
+import com.hotel.repository.PaymentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+// Runs a payment at most once per Idempotency-Key. Concurrent requests with the same key share the
+// first one's future instead of taking a lock; keys from earlier requests (or other instances) are
+// found in payment_idempotency_keys, which is written in the same transaction as the payment.
+@Component
+@RequiredArgsConstructor
+public class PaymentIdempotencyStore {
+    
+    public static final int MAX_KEY_LENGTH = 100;
+    
+    private final PaymentIdempotencyKeyRepository keyRepository;
+    private final PaymentRepository paymentRepository;
+    private final OptimisticRetry optimisticRetry;
+    private final MeterRegistry meterRegistry;
+    
+    private Cache<String, CompletableFuture<PaymentIdempotencyKey>> keys;
+    private Counter replays;
+    
+    @Value("${payments.idempotency.max-keys:100000}")
+    private long maxKeys;
+    
+    @Value("${payments.idempotency.ttl-minutes:1440}")
+    private long ttlMinutes;
+    
+    @PostConstruct
+    void init() {
+        keys = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                .build();
+        replays = meterRegistry.counter("hotel.payment.idempotent.replays");
+    }
+    
+    public IdempotentPayment execute(String key, PaymentRequest request, Supplier<PaymentView> charge) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException(
+                    "Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        CompletableFuture<PaymentIdempotencyKey> mine = new CompletableFuture<>();
+        CompletableFuture<PaymentIdempotencyKey> first = keys.asMap().putIfAbsent(key, mine);
+        if (first != null) {
+            return replay(await(first), request);
+        }
+        try {
+            PaymentIdempotencyKey stored = keyRepository.findById(key).orElse(null);
+            if (stored != null) {
+                mine.complete(stored);
+                return replay(stored, request);
+            }
+            PaymentView payment = optimisticRetry.execute(() -> {
+                PaymentView charged = charge.get();
+                keyRepository.insert(key, charged.getPaymentId(), request.getReservationId(), request.getAmount());
+                return charged;
+            });
+            mine.complete(new PaymentIdempotencyKey(key, payment.getPaymentId(), request.getReservationId(),
+                    request.getAmount(), null));
+            return new IdempotentPayment(payment, false);
+        } catch (DataIntegrityViolationException e) {
+            // Another instance committed this key first; our charge rolled back and theirs stands
+            PaymentIdempotencyKey stored = keyRepository.findById(key).orElse(null);
+            if (stored == null) {
+                fail(key, mine, e);
+                throw e;
+            }
+            mine.complete(stored);
+            return replay(stored, request);
+        } catch (RuntimeException e) {
+            fail(key, mine, e);
+            throw e;
+        }
+    }
+    
+    private IdempotentPayment replay(PaymentIdempotencyKey stored, PaymentRequest request) {
+        if (!stored.getReservationId().equals(request.getReservationId())
+                || stored.getAmount().compareTo(request.getAmount()) != 0) {
+            throw new InvalidIdempotencyKeyException("Idempotency-Key was already used for a different payment");
+        }
+        PaymentView payment = paymentRepository.findViewById(stored.getPaymentId())
+                .orElseThrow(() -> new ResourceNotFoundException("Payment not found with id: " + stored.getPaymentId()));
+        replays.increment();
+        return new IdempotentPayment(payment, true);
+    }
+    
+    // A failed attempt is forgotten so the client can retry; requests already waiting on it get the same error
+    private void fail(String key, CompletableFuture<PaymentIdempotencyKey> mine, RuntimeException e) {
+        keys.asMap().remove(key, mine);
+        mine.completeExceptionally(e);
+    }
+    
+    private static PaymentIdempotencyKey await(CompletableFuture<PaymentIdempotencyKey> first) {
+        try {
+            return first.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
+
+// RollupService.java
+package com.hotel.service;
+
+import com.hotel.dto.RollupStay;
+import com.hotel.model.OccupancyRollup;
+import com.hotel.model.Payment;
+import com.hotel.model.Reservation;
+import com.hotel.model.RevenueRollup;
+import com.hotel.model.RollupChange;
+import com.hotel.repository.OccupancyRollupRepository;
+import com.hotel.repository.PaymentRepository;
+import com.hotel.repository.RevenueRollupRepository;
+import com.hotel.repository.RollupChangeRepository;
+import com.hotel.repository.WeekdayRollupRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Keeps the analytics rollup tables in step with the services. As in the Python reports only
+// CONFIRMED and COMPLETED reservations count, so a status change adds or removes a stay once.
+// Each change is queued in rollup_changes by the transaction that makes it, so it commits or rolls
+// back with the booking or payment, and one flusher thread applies the queue to the rollup rows.
+// Bookings and payments never wait on a shared rollup row, and a crash only delays the changes
+// still queued until the next start.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RollupService {
+    
+    public static final Set<Reservation.ReservationStatus> COUNTED_STATUSES =
+            EnumSet.of(Reservation.ReservationStatus.CONFIRMED, Reservation.ReservationStatus.COMPLETED);
+    
+    private static final int FLUSH_BATCH_SIZE = 1000;
+    
+    private final OccupancyRollupRepository occupancyRollupRepository;
+    private final RevenueRollupRepository revenueRollupRepository;
+    private final WeekdayRollupRepository weekdayRollupRepository;
+    private final RollupChangeRepository rollupChangeRepository;
+    private final PaymentRepository paymentRepository;
+    private final PlatformTransactionManager transactionManager;
+    
+    // Transactions that queue a change hold the read side until they complete; rebuild holds the write side
+    private final ReentrantReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private TransactionTemplate flushTemplate;
+    private TransactionTemplate rebuildTemplate;
+    private ScheduledExecutorService flusher;
+    
+    @Value("${analytics.rollups.flush-interval-ms:1000}")
+    private long flushIntervalMillis;
+    
+    @Value("${analytics.rollups.rebuild-pause-timeout-ms:30000}")
+    private long rebuildPauseTimeoutMillis;
+    
+    @PostConstruct
+    void start() {
+        flushTemplate = new TransactionTemplate(transactionManager);
+        // Locking a batch then takes no gap locks, so bookings can keep queueing changes behind it
+        flushTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        rebuildTemplate = new TransactionTemplate(transactionManager);
+        // INSERT ... SELECT then reads reservations and payments without share-locking them
+        rebuildTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rollup-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The first run also applies whatever a crashed instance left queued
+        flusher.scheduleWithFixedDelay(this::flush, 0, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    void stop() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        flush();
+    }
+    
+    public void onStatusChange(Reservation reservation, Reservation.ReservationStatus previous) {
+        boolean counted = COUNTED_STATUSES.contains(reservation.getStatus());
+        if (counted != (previous != null && COUNTED_STATUSES.contains(previous))) {
+            record(stayChange(reservation, counted ? 1 : -1));
+        }
+    }
+    
+    // Payments go with the reservation (ON DELETE CASCADE), so their revenue is taken back too
+    public void onDelete(Reservation reservation) {
+        if (COUNTED_STATUSES.contains(reservation.getStatus())) {
+            record(stayChange(reservation, -1));
+        }
+        paymentRepository.findByReservation_ReservationId(reservation.getReservationId())
+                .forEach(payment -> onPayment(payment, -1));
+    }
+    
+    public void onPayment(Payment payment) {
+        onPayment(payment, 1);
+    }
+    
+    // Full recomputation for the initial backfill or after manual data fixes; run it off-peak.
+    // Transactions that queued a change before the pause have committed and are in the rebuild's
+    // snapshot, so their queued changes are discarded; later ones wait until the rebuild commits.
+    public Map<String, Object> rebuild() {
+        pauseChanges();
+        flushLock.lock();
+        try {
+            Map<String, Object> result = rebuildTemplate.execute(status -> {
+                rollupChangeRepository.deleteAllInBatch();
+                occupancyRollupRepository.deleteAllInBatch();
+                revenueRollupRepository.deleteAllInBatch();
+                weekdayRollupRepository.deleteAllInBatch();
+                
+                Map<String, Object> rows = new LinkedHashMap<>();
+                rows.put("occupancyRows", occupancyRollupRepository.rebuild());
+                rows.put("revenueRows", revenueRollupRepository.rebuild());
+                rows.put("weekdayRows", weekdayRollupRepository.rebuild());
+                return rows;
+            });
+            log.info("Rebuilt analytics rollups: {}", result);
+            return result;
+        } finally {
+            flushLock.unlock();
+            rebuildLock.writeLock().unlock();
+        }
+    }
+    
+    // Applies the queue a batch at a time. A batch is summed per rollup row, upserted and deleted
+    // in one transaction, so each change is applied exactly once even if the flush is cut short.
+    void flush() {
+        flushLock.lock();
+        try {
+            int flushed;
+            do {
+                flushed = flushTemplate.execute(status -> flushBatch());
+            } while (flushed == FLUSH_BATCH_SIZE);
+        } catch (RuntimeException e) {
+            log.warn("Rollup flush failed, leaving the changes queued for the next attempt: {}", e.getMessage());
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    private int flushBatch() {
+        List<RollupChange> changes = rollupChangeRepository.lockNextBatch(FLUSH_BATCH_SIZE);
+        if (changes.isEmpty()) {
+            return 0;
+        }
+        Totals totals = new Totals();
+        changes.forEach(totals::add);
+        totals.occupancy.forEach((key, delta) -> {
+            if (!delta.isZero()) {
+                occupancyRollupRepository.add(key.getStayDate(), key.getRoomTypeId(), (int) delta.count, delta.amount);
+            }
+        });
+        totals.revenue.forEach((key, delta) -> {
+            if (!delta.isZero()) {
+                revenueRollupRepository.add(key.getRevenueMonth(), key.getPaymentMethod().name(),
+                        delta.amount, delta.count);
+            }
+        });
+        totals.weekdays.forEach((day, delta) -> {
+            if (!delta.isZero()) {
+                weekdayRollupRepository.add(day, delta.count, delta.amount);
+            }
+        });
+        rollupChangeRepository.deleteAllByIdInBatch(changes.stream().map(RollupChange::getChangeId).toList());
+        return changes.size();
+    }
+    
+    private void onPayment(Payment payment, int sign) {
+        if (payment.getPaymentStatus() == Payment.PaymentStatus.COMPLETED) {
+            record(paymentChange(payment, sign));
+        }
+    }
+    
+    private void record(RollupChange change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            rebuildLock.readLock().lock();
+            try {
+                rollupChangeRepository.save(change);
+            } finally {
+                rebuildLock.readLock().unlock();
+            }
+            return;
+        }
+        if (!TransactionSynchronizationManager.hasResource(this)) {
+            rebuildLock.readLock().lock();
+            TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResource(RollupService.this);
+                    rebuildLock.readLock().unlock();
+                }
+            });
+        }
+        rollupChangeRepository.save(change);
+    }
+    
+    // Polls instead of queueing on the write lock: a queued writer makes new readers wait, and a
+    // transaction waiting for the read lock may hold row locks an in-flight reader still needs
+    private void pauseChanges() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(rebuildPauseTimeoutMillis);
+        while (!rebuildLock.writeLock().tryLock()) {
+            if (System.nanoTime() > deadline) {
+                throw new RuntimeException("Bookings kept the rollups busy; retry the rebuild off-peak");
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while pausing rollup updates");
+            }
+        }
+    }
+    
+    private static RollupChange stayChange(Reservation reservation, int sign) {
+        RollupChange change = new RollupChange();
+        change.setKind(RollupChange.Kind.STAY);
+        change.setSign(sign);
+        change.setAmount(reservation.getTotalAmount());
+        change.setOccurredAt(reservation.getCreatedAt());
+        change.setRoomTypeId(reservation.getRoom().getRoomType().getRoomTypeId());
+        change.setCheckInDate(reservation.getCheckInDate());
+        change.setCheckOutDate(reservation.getCheckOutDate());
+        return change;
+    }
+    
+    private static RollupChange paymentChange(Payment payment, int sign) {
+        RollupChange change = new RollupChange();
+        change.setKind(RollupChange.Kind.PAYMENT);
+        change.setSign(sign);
+        change.setAmount(payment.getAmount());
+        change.setOccurredAt(payment.getPaymentDate() == null ? LocalDateTime.now() : payment.getPaymentDate());
+        change.setPaymentMethod(payment.getPaymentMethod());
+        return change;
+    }
+    
+    // Nights run from check-in up to but excluding check-out; the first night takes the rounding remainder
+    private static void forEachNight(RollupStay stay, NightConsumer consumer) {
+        long nights = ChronoUnit.DAYS.between(stay.getCheckInDate(), stay.getCheckOutDate());
+        if (nights <= 0) {
+            return;
+        }
+        BigDecimal perNight = stay.getTotalAmount().divide(BigDecimal.valueOf(nights), 2, RoundingMode.DOWN);
+        BigDecimal firstNight = stay.getTotalAmount().subtract(perNight.multiply(BigDecimal.valueOf(nights - 1)));
+        for (long night = 0; night < nights; night++) {
+            consumer.accept(stay.getCheckInDate().plusDays(night), night == 0 ? firstNight : perNight);
+        }
+    }
+    
+    @FunctionalInterface
+    private interface NightConsumer {
+        void accept(LocalDate date, BigDecimal revenue);
+    }
+    
+    @lombok.Value
+    private static class Delta {
+        long count;
+        BigDecimal amount;
+        
+        Delta plus(Delta other) {
+            return new Delta(count + other.count, amount.add(other.amount));
+        }
+        
+        boolean isZero() {
+            return count == 0 && amount.signum() == 0;
+        }
+    }
+    
+    // One flush batch summed per rollup row
+    private static class Totals {
+        private final Map<OccupancyRollup.Key, Delta> occupancy = new HashMap<>();
+        private final Map<RevenueRollup.Key, Delta> revenue = new HashMap<>();
+        private final Map<Integer, Delta> weekdays = new HashMap<>();
+        
+        void add(RollupChange change) {
+            int sign = change.getSign();
+            BigDecimal amount = change.getAmount().multiply(BigDecimal.valueOf(sign));
+            if (change.getKind() == RollupChange.Kind.PAYMENT) {
+                revenue.merge(new RevenueRollup.Key(change.getOccurredAt().toLocalDate().withDayOfMonth(1),
+                        change.getPaymentMethod()), new Delta(sign, amount), Delta::plus);
+                return;
+            }
+            RollupStay stay = new RollupStay(change.getRoomTypeId(), change.getCheckInDate(),
+                    change.getCheckOutDate(), change.getAmount(), change.getOccurredAt());
+            forEachNight(stay, (date, nightAmount) -> occupancy.merge(new OccupancyRollup.Key(date, stay.getRoomTypeId()),
+                    new Delta(sign, nightAmount.multiply(BigDecimal.valueOf(sign))), Delta::plus));
+            if (stay.getCreatedAt() != null) {
+                weekdays.merge(stay.getCreatedAt().getDayOfWeek().getValue(), new Delta(sign, amount), Delta::plus);
+            }
+        }
+    }
+}
+
+// AnalyticsService.java
+package com.hotel.service;
+
+import com.hotel.dto.OccupancyPoint;
+import com.hotel.model.RevenueRollup;
+import com.hotel.model.WeekdayRollup;
+import com.hotel.repository.OccupancyRollupRepository;
+import com.hotel.repository.RevenueRollupRepository;
+import com.hotel.repository.WeekdayRollupRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+// Reads the pre-aggregated rollups; no query here touches the reservations or payments tables
+@Service
+@RequiredArgsConstructor
+public class AnalyticsService {
+    
+    private final OccupancyRollupRepository occupancyRollupRepository;
+    private final RevenueRollupRepository revenueRollupRepository;
+    private final WeekdayRollupRepository weekdayRollupRepository;
+    private final RoomService roomService;
+    private final RollupService rollupService;
+    
+    public List<OccupancyPoint> getOccupancy(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new RuntimeException("'to' must not be before 'from'");
+        }
+        Map<Long, Long> totalRooms = roomService.countRoomsByType();
+        return occupancyRollupRepository.findByStayDateBetweenOrderByStayDateAscRoomTypeIdAsc(from, to).stream()
+                .map(row -> {
+                    long total = totalRooms.getOrDefault(row.getRoomTypeId(), 0L);
+                    double rate = total == 0 ? 0.0 : (double) row.getOccupiedRooms() / total;
+                    return new OccupancyPoint(row.getStayDate(), row.getRoomTypeId(), row.getOccupiedRooms(),
+                            total, rate, row.getRoomRevenue());
+                })
+                .toList();
+    }
+    
+    public List<RevenueRollup> getMonthlyRevenue(int year) {
+        return revenueRollupRepository.findByRevenueMonthBetweenOrderByRevenueMonthAsc(
+                LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 1));
+    }
+    
+    public List<WeekdayRollup> getWeekdayBookings() {
+        return weekdayRollupRepository.findAllByOrderByDayOfWeekAsc();
+    }
+    
+    public Map<String, Object> rebuildRollups() {
+        return rollupService.rebuild();
+    }
+}
+
+// EmailService.java
+package com.hotel.service;
+
+import com.hotel.model.Reservation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.stereotype.Service;
+import java.math.BigDecimal;
+import java.util.List;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EmailService {
+    
+    private final EmailOutbox emailOutbox;
+    
+    public void sendReservationConfirmation(String toEmail, Reservation reservation) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(toEmail);
+        message.setSubject("Reservation Confirmation - " + reservation.getReservationId());
+        message.setText(buildReservationEmail(reservation));
+        
+        emailOutbox.enqueue(message);
+        log.debug("Queued reservation confirmation reservationId={} roomId={}",
+                reservation.getReservationId(), reservation.getRoom().getRoomId());
+    }
+    
+    public void sendGroupReservationConfirmation(String toEmail, List<Reservation> reservations) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(toEmail);
+        message.setSubject("Group Reservation Confirmation - " + reservations.size() + " rooms");
+        message.setText(buildGroupReservationEmail(reservations));
+        
+        emailOutbox.enqueue(message);
+        log.debug("Queued group reservation confirmation firstReservationId={} rooms={}",
+                reservations.get(0).getReservationId(), reservations.size());
+    }
+    
+    private String buildReservationEmail(Reservation reservation) {
+        return String.format(
+            "Dear %s,\n\n" +
+            "Your reservation has been confirmed!\n\n" +
+            "Reservation ID: %d\n" +
+            "Room Number: %s\n" +
+            "Check-in: %s\n" +
+            "Check-out: %s\n" +
+            "Total Amount: ₹%.2f\n\n" +
+            "Thank you for choosing our hotel!\n\n" +
+            "Best regards,\n" +
+            "Hotel Management",
+            reservation.getCustomer().getFirstName(),
+            reservation.getReservationId(),
+            reservation.getRoom().getRoomNumber(),
+            reservation.getCheckInDate(),
+            reservation.getCheckOutDate(),
+            reservation.getTotalAmount()
+        );
+    }
+    
+    private String buildGroupReservationEmail(List<Reservation> reservations) {
+        Reservation first = reservations.get(0);
+        StringBuilder rooms = new StringBuilder();
+        BigDecimal totalAmount = BigDecimal.ZERO;
+        for (Reservation reservation : reservations) {
+            rooms.append("Reservation ID: ").append(reservation.getReservationId())
+                    .append(" - Room ").append(reservation.getRoom().getRoomNumber()).append("\n");
+            totalAmount = totalAmount.add(reservation.getTotalAmount());
+        }
+        return String.format(
+            "Dear %s,\n\n" +
+            "Your group reservation for %d rooms has been confirmed!\n\n" +
+            "%s\n" +
+            "Check-in: %s\n" +
+            "Check-out: %s\n" +
+            "Total Amount: ₹%.2f\n\n" +
+            "Thank you for choosing our hotel!\n\n" +
+            "Best regards,\n" +
+            "Hotel Management",
+            first.getCustomer().getFirstName(),
+            reservations.size(),
+            rooms,
+            first.getCheckInDate(),
+            first.getCheckOutDate(),
+            totalAmount
+        );
+    }
+}
+
+// EmailOutbox.java
+package com.hotel.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Mail is queued when the caller's transaction commits and sent from a single dispatcher
+// thread, so bookings never wait on SMTP. Each batch goes out over one SMTP connection.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EmailOutbox {
+    
+    private final JavaMailSender mailSender;
+    private final MeterRegistry meterRegistry;
+    
+    private final DelayQueue<PendingEmail> queue = new DelayQueue<>();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong retriedCount = new AtomicLong();
+    private ScheduledExecutorService dispatcher;
+    private Timer deliveryTimer;
+    private Timer sendTimer;
+    
+    @Value("${email.outbox.capacity:10000}")
+    private int capacity;
+    
+    @Value("${email.outbox.batch-size:50}")
+    private int batchSize;
+    
+    @Value("${email.outbox.max-attempts:5}")
+    private int maxAttempts;
+    
+    @Value("${email.outbox.initial-backoff-ms:1000}")
+    private long initialBackoffMillis;
+    
+    @Value("${email.outbox.poll-interval-ms:200}")
+    private long pollIntervalMillis;
+    
+    @PostConstruct
+    void start() {
+        Gauge.builder("hotel.email.queue.depth", queue, DelayQueue::size)
+                .description("Emails waiting to be sent or retried")
+                .register(meterRegistry);
+        FunctionCounter.builder("hotel.email.sent", sentCount, AtomicLong::get).register(meterRegistry);
+        FunctionCounter.builder("hotel.email.failed", failedCount, AtomicLong::get)
+                .description("Emails abandoned after the last retry")
+                .register(meterRegistry);
+        FunctionCounter.builder("hotel.email.dropped", droppedCount, AtomicLong::get)
+                .description("Emails rejected because the outbox was full")
+                .register(meterRegistry);
+        FunctionCounter.builder("hotel.email.retries", retriedCount, AtomicLong::get).register(meterRegistry);
+        deliveryTimer = Timer.builder("hotel.email.delivery")
+                .description("Time from commit to accepted by the SMTP server")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        sendTimer = Timer.builder("hotel.email.send")
+                .description("Duration of one SMTP batch")
+                .register(meterRegistry);
+        
+        dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "email-outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher.scheduleWithFixedDelay(this::drain, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    @PreDestroy
+    void stop() throws InterruptedException {
+        dispatcher.shutdown();
+        dispatcher.awaitTermination(5, TimeUnit.SECONDS);
+        if (!queue.isEmpty()) {
+            log.warn("Email outbox stopped with {} unsent messages", queue.size());
+        }
+    }
+    
+    public void enqueue(SimpleMailMessage message) {
+        PendingEmail email = new PendingEmail(message);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    offer(email);
+                }
+            });
+        } else {
+            offer(email);
+        }
+    }
+    
+    public int getQueueDepth() {
+        return queue.size();
+    }
+    
+    public long getSentCount() {
+        return sentCount.get();
+    }
+    
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+    
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+    
+    public long getRetriedCount() {
+        return retriedCount.get();
+    }
+    
+    private void offer(PendingEmail email) {
+        if (queue.size() >= capacity) {
+            droppedCount.incrementAndGet();
+            log.warn("Email outbox full ({} messages), dropping mail to {}", capacity, recipients(email));
+            return;
+        }
+        queue.add(email);
+    }
+    
+    void drain() {
+        try {
+            List<PendingEmail> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                send(batch);
+                batch.clear();
+            }
+        } catch (RuntimeException e) {
+            log.error("Email outbox dispatch failed", e);
+        }
+    }
+    
+    private void send(List<PendingEmail> batch) {
+        SimpleMailMessage[] messages = batch.stream()
+                .map(PendingEmail::getMessage)
+                .toArray(SimpleMailMessage[]::new);
+        try {
+            sendTimer.record(() -> mailSender.send(messages));
+            batch.forEach(this::markSent);
+        } catch (MailSendException e) {
+            Set<Object> failed = Collections.newSetFromMap(new IdentityHashMap<>());
+            failed.addAll(e.getFailedMessages().keySet());
+            for (PendingEmail email : batch) {
+                if (failed.isEmpty() || failed.contains(email.getMessage())) {
+                    retry(email, e);
+                } else {
+                    markSent(email);
+                }
+            }
+        } catch (MailException e) {
+            batch.forEach(email -> retry(email, e));
+        }
+    }
+    
+    private void markSent(PendingEmail email) {
+        sentCount.incrementAndGet();
+        deliveryTimer.record(System.nanoTime() - email.getEnqueuedAt(), TimeUnit.NANOSECONDS);
+    }
+    
+    private void retry(PendingEmail email, MailException cause) {
+        int attempts = email.recordAttempt();
+        if (attempts >= maxAttempts) {
+            failedCount.incrementAndGet();
+            log.error("Giving up on mail to {} after {} attempts: {}", recipients(email), attempts, cause.getMessage());
+            return;
+        }
+        long backoffMillis = initialBackoffMillis << (attempts - 1);
+        email.delay(backoffMillis);
+        retriedCount.incrementAndGet();
+        log.debug("Mail to {} failed (attempt {}), retrying in {} ms", recipients(email), attempts, backoffMillis);
+        queue.add(email);
+    }
+    
+    private static String recipients(PendingEmail email) {
+        String[] to = email.getMessage().getTo();
+        return to == null ? "" : String.join(",", to);
+    }
+    
+    private static final class PendingEmail implements Delayed {
+        private final SimpleMailMessage message;
+        private final long enqueuedAt = System.nanoTime();
+        private long notBefore = enqueuedAt;
+        private int attempts;
+        
+        PendingEmail(SimpleMailMessage message) {
+            this.message = message;
+        }
+        
+        SimpleMailMessage getMessage() {
+            return message;
+        }
+        
+        long getEnqueuedAt() {
+            return enqueuedAt;
+        }
+        
+        int recordAttempt() {
+            return ++attempts;
+        }
+        
+        void delay(long millis) {
+            notBefore = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+        
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(notBefore - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(notBefore, ((PendingEmail) other).notBefore);
+        }
+    }
+}
+
+// ChangeEventBus.java
+package com.hotel.service;
+
+import com.hotel.dto.ChangeEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Services publish ChangeEvents through Spring's ApplicationEventPublisher and they reach subscribers
+// here once the transaction commits; a rolled back attempt publishes nothing. The committing thread only
+// appends to each subscriber's bounded buffer, and a virtual thread per subscriber does the sending, so
+// a slow client loses events rather than holding up a booking.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChangeEventBus {
+    
+    private final MeterRegistry meterRegistry;
+    
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private ExecutorService senders;
+    
+    @Value("${hotel.events.buffer-size:256}")
+    private int bufferSize;
+    
+    @Value("${hotel.events.max-subscribers:1000}")
+    private int maxSubscribers;
+    
+    // DROP_OLDEST keeps the newest events in order. COALESCE keeps only the latest event per row, so a
+    // client that falls behind still ends up with each row's current status.
+    public enum OverflowPolicy { DROP_OLDEST, COALESCE }
+    
+    // Called from one sender thread at a time per subscription
+    public interface Sink {
+        void send(ChangeEvent event) throws IOException;
+        
+        // Events were discarded since the last send; the client should re-read what it shows
+        void overflowed(long dropped) throws IOException;
+        
+        void closed();
+    }
+    
+    @PostConstruct
+    void start() {
+        Gauge.builder("hotel.events.subscribers", subscriptions, Set::size).register(meterRegistry);
+        FunctionCounter.builder("hotel.events.published", publishedCount, AtomicLong::get).register(meterRegistry);
+        FunctionCounter.builder("hotel.events.dropped", droppedCount, AtomicLong::get)
+                .description("Events discarded because a subscriber's buffer was full")
+                .register(meterRegistry);
+        FunctionCounter.builder("hotel.events.coalesced", coalescedCount, AtomicLong::get)
+                .description("Events replaced by a later event for the same row before they were sent")
+                .register(meterRegistry);
+        senders = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("change-events-", 0).factory());
+    }
+    
+    @PreDestroy
+    void stop() {
+        subscriptions.forEach(Subscription::close);
+        senders.shutdownNow();
+    }
+    
+    public Subscription subscribe(OverflowPolicy policy, Set<ChangeEvent.EntityType> entityTypes, Sink sink) {
+        if (subscriptions.size() >= maxSubscribers) {
+            throw new RuntimeException("Too many event stream subscribers, please retry later");
+        }
+        Buffer buffer = policy == OverflowPolicy.COALESCE
+                ? new CoalescingBuffer(bufferSize) : new RingBuffer(bufferSize);
+        Subscription subscription = new Subscription(buffer, entityTypes, sink);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+    
+    // Changes made outside a transaction are delivered straight away
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(ChangeEvent event) {
+        publishedCount.incrementAndGet();
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+    
+    public final class Subscription implements AutoCloseable {
+        private final Buffer buffer;
+        private final Set<ChangeEvent.EntityType> entityTypes;
+        private final Sink sink;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private long dropped;
+        
+        private Subscription(Buffer buffer, Set<ChangeEvent.EntityType> entityTypes, Sink sink) {
+            this.buffer = buffer;
+            this.entityTypes = entityTypes;
+            this.sink = sink;
+        }
+        
+        private void offer(ChangeEvent event) {
+            if (closed.get() || !entityTypes.contains(event.getEntityType())) {
+                return;
+            }
+            lock.lock();
+            try {
+                Outcome outcome = buffer.add(event);
+                if (outcome == Outcome.COALESCED) {
+                    coalescedCount.incrementAndGet();
+                } else if (outcome == Outcome.DROPPED_OLDEST) {
+                    dropped++;
+                    droppedCount.incrementAndGet();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (sending.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::send);
+                } catch (RejectedExecutionException e) {
+                    close();
+                }
+            }
+        }
+        
+        private void send() {
+            List<ChangeEvent> batch = new ArrayList<>();
+            try {
+                while (!closed.get()) {
+                    long overflowed;
+                    lock.lock();
+                    try {
+                        buffer.drainTo(batch);
+                        overflowed = dropped;
+                        dropped = 0;
+                        // Cleared under the lock, so any later offer starts a new sender
+                        if (batch.isEmpty() && overflowed == 0) {
+                            sending.set(false);
+                            return;
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    if (overflowed > 0) {
+                        sink.overflowed(overflowed);
+                    }
+                    for (ChangeEvent event : batch) {
+                        sink.send(event);
+                    }
+                    batch.clear();
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("Closing change event subscription: {}", e.getMessage());
+                close();
+            }
+        }
+        
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                subscriptions.remove(this);
+                sink.closed();
+            }
+        }
+    }
+    
+    private enum Outcome { ADDED, COALESCED, DROPPED_OLDEST }
+    
+    // Guarded by the owning subscription's lock
+    private interface Buffer {
+        Outcome add(ChangeEvent event);
+        
+        void drainTo(List<ChangeEvent> batch);
+    }
+    
+    // When full, the oldest event is overwritten
+    private static final class RingBuffer implements Buffer {
+        private final ChangeEvent[] events;
+        private int head;
+        private int size;
+        
+        RingBuffer(int capacity) {
+            events = new ChangeEvent[capacity];
+        }
+        
+        @Override
+        public Outcome add(ChangeEvent event) {
+            if (size == events.length) {
+                events[head] = event;
+                head = (head + 1) % events.length;
+                return Outcome.DROPPED_OLDEST;
+            }
+            events[(head + size) % events.length] = event;
+            size++;
+            return Outcome.ADDED;
+        }
+        
+        @Override
+        public void drainTo(List<ChangeEvent> batch) {
+            for (; size > 0; size--) {
+                batch.add(events[head]);
+                events[head] = null;
+                head = (head + 1) % events.length;
+            }
+        }
+    }
+    
+    // At most one pending event per row, in order of each row's latest change
+    private static final class CoalescingBuffer implements Buffer {
+        private final LinkedHashMap<String, ChangeEvent> events = new LinkedHashMap<>();
+        private final int capacity;
+        
+        CoalescingBuffer(int capacity) {
+            this.capacity = capacity;
+        }
+        
+        @Override
+        public Outcome add(ChangeEvent event) {
+            String key = event.key();
+            if (events.remove(key) != null) {
+                events.put(key, event);
+                return Outcome.COALESCED;
+            }
+            Outcome outcome = Outcome.ADDED;
+            if (events.size() == capacity) {
+                Iterator<ChangeEvent> oldest = events.values().iterator();
+                oldest.next();
+                oldest.remove();
+                outcome = Outcome.DROPPED_OLDEST;
+            }
+            events.put(key, event);
+            return outcome;
+        }
+        
+        @Override
+        public void drainTo(List<ChangeEvent> batch) {
+            batch.addAll(events.values());
+            events.clear();
+        }
+    }
+}
+
+// ============================================
+// ANALYTICS ENGINE
+// ============================================
+
+// OccupancyEngine.java
+package com.hotel.analytics;
+
+import com.hotel.dto.PricedStay;
+import com.hotel.repository.ReservationRepository;
+import com.hotel.repository.RoomRepository;
+import com.hotel.service.RollupService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+// Occupancy, ADR and RevPAR over any window, counting every night of a stay rather than the
+// check-in day only. Each room's nights are expanded into a bitset and the rooms are folded
+// into per-night totals on the fork/join pool.
+@Service
+@RequiredArgsConstructor
+public class OccupancyEngine {
+    
+    static final int MAX_WINDOW_DAYS = 3653;
+    
+    private final RoomRepository roomRepository;
+    private final ReservationRepository reservationRepository;
+    
+    // from and to are both inclusive stay dates
+    @Transactional(readOnly = true)
+    public OccupancyReport compute(LocalDate from, LocalDate to, Long roomTypeId, boolean daily) {
+        LocalDate end = to.plusDays(1);
+        long days = ChronoUnit.DAYS.between(from, end);
+        if (days <= 0) {
+            throw new RuntimeException("'to' must not be before 'from'");
+        }
+        if (days > MAX_WINDOW_DAYS) {
+            throw new RuntimeException("Window must not exceed " + MAX_WINDOW_DAYS + " days");
+        }
+        
+        List<Long> roomIds = roomRepository.findRoomIds(roomTypeId);
+        Map<Long, List<PricedStay>> staysByRoom = reservationRepository
+                .findPricedStays(from, end, roomTypeId, RollupService.COUNTED_STATUSES).stream()
+                .collect(Collectors.groupingBy(PricedStay::getRoomId));
+        
+        NightTotals totals = roomIds.parallelStream().collect(
+                () -> new NightTotals(from, (int) days),
+                (acc, roomId) -> acc.addRoom(staysByRoom.getOrDefault(roomId, List.of())),
+                NightTotals::merge);
+        return OccupancyReport.of(from, to, roomIds.size(), totals, daily);
+    }
+}
+
+// NightTotals.java
+package com.hotel.analytics;
+
+import com.hotel.dto.PricedStay;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.List;
+
+// Per-night occupied rooms and room revenue (in cents) for one slice of the rooms
+class NightTotals {
+    
+    final LocalDate from;
+    final int[] occupiedRooms;
+    final long[] revenueCents;
+    
+    NightTotals(LocalDate from, int days) {
+        this.from = from;
+        this.occupiedRooms = new int[days];
+        this.revenueCents = new long[days];
+    }
+    
+    // A stay's revenue is spread evenly over its nights, the first night taking the remainder.
+    // Overlapping stays on one room (dirty data) keep their revenue but occupy a night only once.
+    void addRoom(List<PricedStay> stays) {
+        int days = occupiedRooms.length;
+        BitSet nights = new BitSet(days);
+        for (PricedStay stay : stays) {
+            long stayNights = ChronoUnit.DAYS.between(stay.getCheckInDate(), stay.getCheckOutDate());
+            if (stayNights <= 0) {
+                continue;
+            }
+            long cents = stay.getTotalAmount().setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+            long perNight = cents / stayNights;
+            long firstNight = cents - perNight * (stayNights - 1);
+            long start = ChronoUnit.DAYS.between(from, stay.getCheckInDate());
+            int lo = (int) Math.max(start, 0);
+            int hi = (int) Math.min(start + stayNights, days);
+            for (int night = lo; night < hi; night++) {
+                revenueCents[night] += night == start ? firstNight : perNight;
+            }
+            if (lo < hi) {
+                nights.set(lo, hi);
+            }
+        }
+        for (int night = nights.nextSetBit(0); night >= 0; night = nights.nextSetBit(night + 1)) {
+            occupiedRooms[night]++;
+        }
+    }
+    
+    void merge(NightTotals other) {
+        for (int night = 0; night < occupiedRooms.length; night++) {
+            occupiedRooms[night] += other.occupiedRooms[night];
+            revenueCents[night] += other.revenueCents[night];
+        }
+    }
+}
+
+// OccupancyReport.java
+package com.hotel.analytics;
+
+import lombok.Value;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+@Value
+public class OccupancyReport {
+    LocalDate from;
+    LocalDate to;
+    int rooms;
+    long availableRoomNights;
+    long occupiedRoomNights;
+    double occupancyRate;
+    BigDecimal roomRevenue;
+    BigDecimal adr;
+    BigDecimal revpar;
+    List<Night> nights;
+    
+    @Value
+    public static class Night {
+        LocalDate date;
+        int occupiedRooms;
+        double occupancyRate;
+        BigDecimal roomRevenue;
+        BigDecimal adr;
+        BigDecimal revpar;
+    }
+    
+    static OccupancyReport of(LocalDate from, LocalDate to, int rooms, NightTotals totals, boolean daily) {
+        int days = totals.occupiedRooms.length;
+        long occupied = 0;
+        long cents = 0;
+        List<Night> nights = daily ? new ArrayList<>(days) : List.of();
+        for (int night = 0; night < days; night++) {
+            occupied += totals.occupiedRooms[night];
+            cents += totals.revenueCents[night];
+            if (daily) {
+                nights.add(new Night(from.plusDays(night), totals.occupiedRooms[night],
+                        rate(totals.occupiedRooms[night], rooms), BigDecimal.valueOf(totals.revenueCents[night], 2),
+                        perUnit(totals.revenueCents[night], totals.occupiedRooms[night]),
+                        perUnit(totals.revenueCents[night], rooms)));
+            }
+        }
+        long available = (long) rooms * days;
+        return new OccupancyReport(from, to, rooms, available, occupied, rate(occupied, available),
+                BigDecimal.valueOf(cents, 2), perUnit(cents, occupied), perUnit(cents, available), nights);
+    }
+    
+    private static double rate(long occupied, long available) {
+        return available == 0 ? 0.0 : (double) occupied / available;
+    }
+    
+    private static BigDecimal perUnit(long cents, long units) {
+        return units == 0 ? BigDecimal.ZERO.setScale(2)
+                : BigDecimal.valueOf(cents, 2).divide(BigDecimal.valueOf(units), 2, RoundingMode.HALF_UP);
+    }
+}
+
+// ============================================
+// PRICING ENGINE
+// ============================================
+
+// PricingRules.java
+package com.hotel.pricing;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.validation.annotation.Validated;
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+// Multipliers scale the room type's base price. The configured rules seed the engine at startup
+// and can be replaced at runtime through PUT /api/rooms/pricing/rules.
+@Data
+@Validated
+@ConfigurationProperties(prefix = "hotel.pricing")
+public class PricingRules {
+    
+    @Min(1)
+    @Max(3653)
+    private int horizonDays = 730;
+    
+    @NotNull
+    private Set<DayOfWeek> weekendDays = EnumSet.of(DayOfWeek.FRIDAY, DayOfWeek.SATURDAY);
+    
+    @NotNull
+    @DecimalMin("0.1")
+    @DecimalMax("10")
+    private BigDecimal weekendMultiplier = BigDecimal.ONE;
+    
+    @Valid
+    @NotNull
+    private List<Season> seasons = new ArrayList<>();
+    
+    @Valid
+    @NotNull
+    private List<OccupancyTier> occupancyTiers = new ArrayList<>();
+    
+    @Valid
+    @NotNull
+    private List<StayDiscount> lengthOfStay = new ArrayList<>();
+    
+    // The first matching season wins, so list narrow periods before the ones they sit in
+    BigDecimal seasonMultiplier(LocalDate night) {
+        for (Season season : seasons) {
+            if (!night.isBefore(season.getFrom()) && !night.isAfter(season.getTo())) {
+                return season.getMultiplier();
+            }
+        }
+        return BigDecimal.ONE;
+    }
+    
+    BigDecimal weekdayMultiplier(LocalDate night) {
+        return weekendDays.contains(night.getDayOfWeek()) ? weekendMultiplier : BigDecimal.ONE;
+    }
+    
+    // The highest tier the occupancy reaches applies
+    BigDecimal occupancyMultiplier(double occupancy) {
+        BigDecimal multiplier = BigDecimal.ONE;
+        double reached = -1;
+        for (OccupancyTier tier : occupancyTiers) {
+            if (occupancy >= tier.getMinOccupancy() && tier.getMinOccupancy() > reached) {
+                reached = tier.getMinOccupancy();
+                multiplier = tier.getMultiplier();
+            }
+        }
+        return multiplier;
+    }
+    
+    // Basis points off the stay total, indexed by nights; the last entry covers all longer stays
+    int[] stayDiscountBasisPoints() {
+        int longest = lengthOfStay.stream().mapToInt(StayDiscount::getMinNights).max().orElse(0);
+        int[] basisPoints = new int[longest + 1];
+        for (StayDiscount discount : lengthOfStay) {
+            int bps = discount.getDiscount().movePointRight(4).intValue();
+            for (int nights = discount.getMinNights(); nights <= longest; nights++) {
+                basisPoints[nights] = Math.max(basisPoints[nights], bps);
+            }
+        }
+        return basisPoints;
+    }
+    
+    @Data
+    public static class Season {
+        @NotNull
+        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+        private LocalDate from;
+        
+        // Inclusive
+        @NotNull
+        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+        private LocalDate to;
+        
+        @NotNull
+        @DecimalMin("0.1")
+        @DecimalMax("10")
+        private BigDecimal multiplier;
+        
+        @AssertTrue(message = "season 'to' must not be before 'from'")
+        boolean isOrdered() {
+            return from == null || to == null || !to.isBefore(from);
+        }
+    }
+    
+    @Data
+    public static class OccupancyTier {
+        @DecimalMin("0")
+        @DecimalMax("1")
+        private double minOccupancy;
+        
+        @NotNull
+        @DecimalMin("0.1")
+        @DecimalMax("10")
+        private BigDecimal multiplier;
+    }
+    
+    @Data
+    public static class StayDiscount {
+        @Min(2)
+        @Max(365)
+        private int minNights;
+        
+        @NotNull
+        @DecimalMin("0")
+        @DecimalMax("0.9")
+        private BigDecimal discount;
+    }
+}
+
+// PricingConfig.java
+package com.hotel.pricing;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Scheduling drives the nightly roll of the inventory matrix and, through it, the rate calendars
+@Configuration
+@EnableScheduling
+@EnableConfigurationProperties(PricingRules.class)
+public class PricingConfig {
+}
+
+// PricingEngine.java
+package com.hotel.pricing;
+
+import com.hotel.dto.RateQuote;
+import com.hotel.model.RoomType;
+import com.hotel.service.InventoryMatrix;
+import com.hotel.service.RoomCatalogCache;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Keeps one calendar of nightly rates in cents per room type for the next horizonDays nights, so a
+// quote is a sum over a slice of a long[] with no per-night rule evaluation. Occupancy comes from the
+// inventory matrix: a booking recomputes only the nights it touches, a rules change recomputes
+// everything. Calendars are copied on write and published through a volatile map, so quotes never lock.
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PricingEngine implements InventoryMatrix.Listener {
+    
+    private final InventoryMatrix inventoryMatrix;
+    private final RoomCatalogCache roomCatalogCache;
+    private final PricingRules configuredRules;
+    
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Guarded by writeLock
+    private LocalDate start = LocalDate.now();
+    
+    private volatile PricingRules rules;
+    private volatile int[] stayDiscountBasisPoints;
+    private volatile Map<Long, RateCalendar> calendars = Map.of();
+    
+    @PostConstruct
+    void init() {
+        rules = configuredRules;
+        stayDiscountBasisPoints = configuredRules.stayDiscountBasisPoints();
+        inventoryMatrix.addListener(this);
+    }
+    
+    public BigDecimal quote(Long roomTypeId, LocalDate checkIn, LocalDate checkOut) {
+        return BigDecimal.valueOf(quoteCents(roomTypeId, checkIn, checkOut), 2);
+    }
+    
+    public long quoteCents(Long roomTypeId, LocalDate checkIn, LocalDate checkOut) {
+        long nights = ChronoUnit.DAYS.between(checkIn, checkOut);
+        if (nights < 0) {
+            throw new RuntimeException("Check-out date must be after check-in date");
+        }
+        RateCalendar calendar = calendars.get(roomTypeId);
+        long offset = calendar == null ? -1 : ChronoUnit.DAYS.between(calendar.start, checkIn);
+        long total = 0;
+        if (offset >= 0 && offset + nights <= calendar.nightlyCents.length) {
+            long[] nightlyCents = calendar.nightlyCents;
+            for (int night = (int) offset, end = (int) (offset + nights); night < end; night++) {
+                total += nightlyCents[night];
+            }
+        } else {
+            total = quoteOutsideHorizon(roomTypeId, checkIn, nights);
+        }
+        int[] discounts = stayDiscountBasisPoints;
+        int bps = discounts[(int) Math.min(nights, discounts.length - 1)];
+        return total - (total * bps + 5_000) / 10_000;
+    }
+    
+    public List<RateQuote> quoteAll(LocalDate checkIn, LocalDate checkOut, Long roomTypeId) {
+        long nights = ChronoUnit.DAYS.between(checkIn, checkOut);
+        if (nights <= 0) {
+            throw new RuntimeException("Check-out date must be after check-in date");
+        }
+        List<RateQuote> quotes = new ArrayList<>();
+        for (RoomType roomType : roomCatalogCache.getRoomTypes()) {
+            if (roomTypeId != null && !roomTypeId.equals(roomType.getRoomTypeId())) {
+                continue;
+            }
+            BigDecimal total = quote(roomType.getRoomTypeId(), checkIn, checkOut);
+            quotes.add(new RateQuote(roomType.getRoomTypeId(), roomType.getTypeName(), checkIn, checkOut,
+                    nights, total, total.divide(BigDecimal.valueOf(nights), 2, RoundingMode.HALF_UP)));
+        }
+        return quotes;
+    }
+    
+    public PricingRules getRules() {
+        return rules;
+    }
+    
+    public void updateRules(PricingRules updated) {
+        rules = updated;
+        stayDiscountBasisPoints = updated.stayDiscountBasisPoints();
+        onInventoryReloaded();
+    }
+    
+    @Override
+    public void onInventoryReloaded() {
+        writeLock.lock();
+        try {
+            long started = System.nanoTime();
+            int horizon = rules.getHorizonDays();
+            start = LocalDate.now();
+            Map<Long, RateCalendar> loaded = new HashMap<>();
+            for (RoomType roomType : roomCatalogCache.getRoomTypes()) {
+                loaded.put(roomType.getRoomTypeId(), build(roomType.getRoomTypeId(), horizon));
+            }
+            calendars = loaded;
+            log.info("Rate calendars rebuilt: {} room types x {} nights in {} ms",
+                    loaded.size(), horizon, (System.nanoTime() - started) / 1_000_000);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    @Override
+    public void onInventoryChanged(Long roomTypeId, LocalDate from, LocalDate to) {
+        writeLock.lock();
+        try {
+            RateCalendar calendar = calendars.get(roomTypeId);
+            if (calendar == null) {
+                publish(roomTypeId, build(roomTypeId, rules.getHorizonDays()));
+                return;
+            }
+            int horizon = calendar.nightlyCents.length;
+            int first = (int) Math.max(0, Math.min(horizon, ChronoUnit.DAYS.between(start, from)));
+            int last = (int) Math.max(0, Math.min(horizon, ChronoUnit.DAYS.between(start, to)));
+            if (first < last) {
+                long[] nightlyCents = calendar.nightlyCents.clone();
+                fill(nightlyCents, roomTypeId, first, last);
+                publish(roomTypeId, new RateCalendar(start, nightlyCents));
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    private RateCalendar build(Long roomTypeId, int horizon) {
+        long[] nightlyCents = new long[horizon];
+        fill(nightlyCents, roomTypeId, 0, horizon);
+        return new RateCalendar(start, nightlyCents);
+    }
+    
+    private void fill(long[] nightlyCents, Long roomTypeId, int from, int to) {
+        PricingRules current = rules;
+        long base = baseCents(roomTypeId);
+        for (int night = from; night < to; night++) {
+            LocalDate date = start.plusDays(night);
+            nightlyCents[night] = nightlyRate(current, base, date, inventoryMatrix.occupancy(roomTypeId, date));
+        }
+    }
+    
+    private void publish(Long roomTypeId, RateCalendar calendar) {
+        Map<Long, RateCalendar> next = new HashMap<>(calendars);
+        next.put(roomTypeId, calendar);
+        calendars = next;
+    }
+    
+    // Nights before today or past the horizon are priced on the fly without an occupancy signal
+    private long quoteOutsideHorizon(Long roomTypeId, LocalDate checkIn, long nights) {
+        PricingRules current = rules;
+        long base = baseCents(roomTypeId);
+        long total = 0;
+        for (long night = 0; night < nights; night++) {
+            total += nightlyRate(current, base, checkIn.plusDays(night), 0.0);
+        }
+        return total;
+    }
+    
+    private long baseCents(Long roomTypeId) {
+        return roomCatalogCache.getBasePrice(roomTypeId).movePointRight(2).longValue();
+    }
+    
+    private static long nightlyRate(PricingRules rules, long baseCents, LocalDate night, double occupancy) {
+        return BigDecimal.valueOf(baseCents)
+                .multiply(rules.seasonMultiplier(night))
+                .multiply(rules.weekdayMultiplier(night))
+                .multiply(rules.occupancyMultiplier(occupancy))
+                .setScale(0, RoundingMode.HALF_UP)
+                .longValueExact();
+    }
+    
+    private static final class RateCalendar {
+        final LocalDate start;
+        final long[] nightlyCents;
+        
+        RateCalendar(LocalDate start, long[] nightlyCents) {
+            this.start = start;
+            this.nightlyCents = nightlyCents;
+        }
+    }
+}
+
+// ============================================
+// CONTROLLER CLASSES
+// ============================================
+
+// AuthController.java
+package com.hotel.controller;
+
+import com.hotel.dto.LoginRequest;
+import com.hotel.dto.RegisterRequest;
+import com.hotel.exception.LoginThrottledException;
+import com.hotel.model.User;
+import com.hotel.security.AuthenticatedUser;
+import com.hotel.security.JwtTokenProvider;
+import com.hotel.service.UserService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/auth")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class AuthController {
+    
+    private final UserService userService;
+    private final JwtTokenProvider jwtTokenProvider;
+    
+    @PostMapping("/register")
+    public ResponseEntity<?> register(@Valid @RequestBody RegisterRequest request) {
+        try {
+            User user = userService.registerUser(request);
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "User registered successfully");
+            response.put("userId", user.getUserId());
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+    
+    @PostMapping("/login")
+    public ResponseEntity<?> login(@Valid @RequestBody LoginRequest request) {
+        try {
+            AuthenticatedUser user = userService.authenticate(request);
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Login successful");
+            response.put("userId", user.getUserId());
+            response.put("username", user.getUsername());
+            response.put("role", user.getRole());
+            response.put("token", jwtTokenProvider.createToken(user));
+            response.put("tokenType", "Bearer");
+            response.put("expiresIn", jwtTokenProvider.getExpirationMillis() / 1000);
+            return ResponseEntity.ok(response);
+        } catch (LoginThrottledException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
+        }
+    }
+}
+
+// RoomController.java
+package com.hotel.controller;
+
+import com.hotel.dto.AvailabilityCalendar;
+import com.hotel.dto.KeysetPage;
+import com.hotel.dto.RateQuote;
+import com.hotel.dto.RoomTypeAvailability;
+import com.hotel.dto.RoomView;
+import com.hotel.model.Room;
+import com.hotel.model.RoomType;
+import com.hotel.pricing.PricingEngine;
+import com.hotel.pricing.PricingRules;
+import com.hotel.service.CalendarService;
+import com.hotel.service.RoomService;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/rooms")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*", exposedHeaders = {KeysetResponses.NEXT_AFTER, KeysetResponses.LINK})
+public class RoomController {
+    
+    private final RoomService roomService;
+    private final CalendarService calendarService;
+    private final PricingEngine pricingEngine;
+    private final NdjsonWriter ndjsonWriter;
+    
+    @GetMapping
+    public ResponseEntity<List<RoomView>> getRooms(
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "" + KeysetPage.DEFAULT_LIMIT) int limit,
+            @RequestParam(required = false) Room.RoomStatus status) {
+        return KeysetResponses.ok(roomService.getRooms(after, limit, status));
+    }
+    
+    @GetMapping(value = "/export", produces = NdjsonWriter.MEDIA_TYPE)
+    public void exportRooms(
+            @RequestParam(required = false) Room.RoomStatus status,
+            HttpServletResponse response) throws IOException {
+        ndjsonWriter.<RoomView>write(response, sink -> roomService.exportRooms(status, sink));
+    }
+    
+    @GetMapping("/{id}")
+    public ResponseEntity<RoomView> getRoomById(@PathVariable Long id) {
+        return ResponseEntity.ok(roomService.getRoom(id));
+    }
+    
+    @GetMapping("/available")
+    public ResponseEntity<List<RoomView>> getAvailableRooms(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkIn,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkOut) {
+        return ResponseEntity.ok(roomService.getAvailableRooms(checkIn, checkOut));
+    }
+    
+    @GetMapping("/available/check")
+    public ResponseEntity<Map<String, Object>> checkAvailabilityIndex(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkIn,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkOut) {
+        return ResponseEntity.ok(roomService.checkAvailabilityIndex(checkIn, checkOut));
+    }
+    
+    @GetMapping("/search")
+    public ResponseEntity<List<RoomTypeAvailability>> searchAvailability(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkIn,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkOut,
+            @RequestParam(required = false) Integer guests,
+            @RequestParam(required = false) Long roomTypeId) {
+        return ResponseEntity.ok(roomService.searchAvailability(checkIn, checkOut, guests, roomTypeId));
+    }
+    
+    @GetMapping("/calendar")
+    public ResponseEntity<AvailabilityCalendar> getCalendar(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(defaultValue = "30") int days,
+            @RequestParam(required = false) Long roomTypeId) {
+        return ResponseEntity.ok(calendarService.getCalendar(from, days, roomTypeId));
+    }
+    
+    @GetMapping("/quote")
+    public ResponseEntity<List<RateQuote>> quote(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkIn,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkOut,
+            @RequestParam(required = false) Long roomTypeId) {
+        return ResponseEntity.ok(pricingEngine.quoteAll(checkIn, checkOut, roomTypeId));
+    }
+    
+    @GetMapping("/pricing/rules")
+    public ResponseEntity<PricingRules> getPricingRules() {
+        return ResponseEntity.ok(pricingEngine.getRules());
+    }
+    
+    @PutMapping("/pricing/rules")
+    public ResponseEntity<PricingRules> updatePricingRules(@Valid @RequestBody PricingRules rules) {
+        pricingEngine.updateRules(rules);
+        return ResponseEntity.ok(pricingEngine.getRules());
+    }
+    
+    @GetMapping("/types")
+    public ResponseEntity<List<RoomType>> getAllRoomTypes() {
+        return ResponseEntity.ok(roomService.getAllRoomTypes());
+    }
+    
+    @GetMapping("/catalog/stats")
+    public ResponseEntity<Map<String, Object>> getCatalogStats() {
+        return ResponseEntity.ok(roomService.getCatalogStats());
+    }
+    
+    @PostMapping
+    public ResponseEntity<RoomView> createRoom(@RequestBody Room room) {
+        return ResponseEntity.ok(roomService.createRoom(room));
+    }
+    
+    @PutMapping("/{id}/status")
+    public ResponseEntity<RoomView> updateRoomStatus(
+            @PathVariable Long id,
+            @RequestParam Room.RoomStatus status) {
+        return ResponseEntity.ok(roomService.updateRoomStatus(id, status));
+    }
+}
+
+// ReservationController.java
+package com.hotel.controller;
+
+import com.hotel.dto.GroupReservationRequest;
+import com.hotel.dto.KeysetPage;
+import com.hotel.dto.ReservationRequest;
+import com.hotel.dto.ReservationView;
+import com.hotel.model.Reservation;
+import com.hotel.service.ReservationService;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/reservations")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*", exposedHeaders = {KeysetResponses.NEXT_AFTER, KeysetResponses.LINK})
+public class ReservationController {
+    
+    private final ReservationService reservationService;
+    private final NdjsonWriter ndjsonWriter;
+    
+    @GetMapping
+    public ResponseEntity<List<ReservationView>> getReservations(
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "" + KeysetPage.DEFAULT_LIMIT) int limit,
+            @RequestParam(required = false) Reservation.ReservationStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return KeysetResponses.ok(reservationService.getReservations(after, limit, status, from, to));
+    }
+    
+    @GetMapping(value = "/export", produces = NdjsonWriter.MEDIA_TYPE)
+    public void exportReservations(
+            @RequestParam(required = false) Reservation.ReservationStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            HttpServletResponse response) throws IOException {
+        ndjsonWriter.<ReservationView>write(response,
+                sink -> reservationService.exportReservations(status, from, to, sink));
+    }
+    
+    @GetMapping("/{id}")
+    public ResponseEntity<ReservationView> getReservationById(@PathVariable Long id) {
+        return ResponseEntity.ok(ReservationView.from(reservationService.getReservationById(id)));
+    }
+    
+    @GetMapping("/customer/{customerId}")
+    public ResponseEntity<List<ReservationView>> getReservationsByCustomerId(@PathVariable Long customerId) {
+        return ResponseEntity.ok(reservationService.getReservationsByCustomerId(customerId));
+    }
+    
+    @PostMapping("/user/{userId}")
+    public ResponseEntity<ReservationView> createReservation(
+            @PathVariable Long userId,
+            @Valid @RequestBody ReservationRequest request) {
+        Reservation reservation = reservationService.createReservation(userId, request);
+        return ResponseEntity.status(HttpStatus.CREATED).body(ReservationView.from(reservation));
+    }
+    
+    @PostMapping("/user/{userId}/group")
+    public ResponseEntity<List<ReservationView>> createGroupReservation(
+            @PathVariable Long userId,
+            @Valid @RequestBody GroupReservationRequest request) {
+        List<ReservationView> reservations = reservationService.createGroupReservation(userId, request).stream()
+                .map(ReservationView::from)
+                .toList();
+        return ResponseEntity.status(HttpStatus.CREATED).body(reservations);
+    }
+    
+    @PutMapping("/{id}/status")
+    public ResponseEntity<ReservationView> updateReservationStatus(
+            @PathVariable Long id,
+            @RequestParam Reservation.ReservationStatus status) {
+        return ResponseEntity.ok(ReservationView.from(reservationService.updateReservationStatus(id, status)));
+    }
+    
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteReservation(@PathVariable Long id) {
+        reservationService.deleteReservation(id);
+        return ResponseEntity.noContent().build();
+    }
+}
+
+// PaymentController.java
+package com.hotel.controller;
+
+import com.hotel.dto.IdempotentPayment;
+import com.hotel.dto.KeysetPage;
+import com.hotel.dto.PaymentRequest;
+import com.hotel.dto.PaymentView;
+import com.hotel.model.Payment;
+import com.hotel.service.PaymentService;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/payments")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*", exposedHeaders = {KeysetResponses.NEXT_AFTER, KeysetResponses.LINK})
+public class PaymentController {
+    
+    static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    static final String IDEMPOTENCY_REPLAYED = "Idempotency-Replayed";
+    
+    private final PaymentService paymentService;
+    private final NdjsonWriter ndjsonWriter;
+    
+    @GetMapping
+    public ResponseEntity<List<PaymentView>> getPayments(
+            @RequestParam(required = false) Long after,
+            @RequestParam(defaultValue = "" + KeysetPage.DEFAULT_LIMIT) int limit,
+            @RequestParam(required = false) Payment.PaymentStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return KeysetResponses.ok(paymentService.getPayments(after, limit, status, from, to));
+    }
+    
+    @GetMapping(value = "/export", produces = NdjsonWriter.MEDIA_TYPE)
+    public void exportPayments(
+            @RequestParam(required = false) Payment.PaymentStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            HttpServletResponse response) throws IOException {
+        ndjsonWriter.<PaymentView>write(response, sink -> paymentService.exportPayments(status, from, to, sink));
+    }
+    
+    @GetMapping("/{id}")
+    public ResponseEntity<PaymentView> getPaymentById(@PathVariable Long id) {
+        return ResponseEntity.ok(paymentService.getPaymentById(id));
+    }
+    
+    // With an Idempotency-Key a retry returns the original payment with 200 instead of charging again
+    @PostMapping
+    public ResponseEntity<PaymentView> processPayment(
+            @Valid @RequestBody PaymentRequest request,
+            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        if (idempotencyKey == null) {
+            Payment payment = paymentService.processPayment(request);
+            return ResponseEntity.status(HttpStatus.CREATED).body(PaymentView.from(payment));
+        }
+        IdempotentPayment outcome = paymentService.processPayment(request, idempotencyKey);
+        return ResponseEntity.status(outcome.isReplayed() ? HttpStatus.OK : HttpStatus.CREATED)
+                .header(IDEMPOTENCY_REPLAYED, String.valueOf(outcome.isReplayed()))
+                .body(outcome.getPayment());
+    }
+}
+
+// AnalyticsController.java
+package com.hotel.controller;
+
+import com.hotel.analytics.OccupancyEngine;
+import com.hotel.analytics.OccupancyReport;
+import com.hotel.dto.OccupancyPoint;
+import com.hotel.model.RevenueRollup;
+import com.hotel.model.WeekdayRollup;
+import com.hotel.service.AnalyticsService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/analytics")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class AnalyticsController {
+    
+    private final AnalyticsService analyticsService;
+    private final OccupancyEngine occupancyEngine;
+    
+    @GetMapping("/occupancy")
+    public ResponseEntity<List<OccupancyPoint>> getOccupancy(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(analyticsService.getOccupancy(from, to));
+    }
+    
+    @GetMapping("/occupancy/nightly")
+    public ResponseEntity<OccupancyReport> getNightlyOccupancy(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Long roomTypeId,
+            @RequestParam(defaultValue = "false") boolean daily) {
+        return ResponseEntity.ok(occupancyEngine.compute(from, to, roomTypeId, daily));
+    }
+    
+    @GetMapping("/revenue/monthly")
+    public ResponseEntity<List<RevenueRollup>> getMonthlyRevenue(@RequestParam int year) {
+        return ResponseEntity.ok(analyticsService.getMonthlyRevenue(year));
+    }
+    
+    @GetMapping("/bookings/weekday")
+    public ResponseEntity<List<WeekdayRollup>> getWeekdayBookings() {
+        return ResponseEntity.ok(analyticsService.getWeekdayBookings());
+    }
+    
+    @PostMapping("/rollups/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildRollups() {
+        return ResponseEntity.ok(analyticsService.rebuildRollups());
+    }
+}
+
+// EventController.java
+package com.hotel.controller;
+
+import com.hotel.dto.ChangeEvent;
+import com.hotel.service.ChangeEventBus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+// Server-sent events for clients that used to poll /api/rooms and /api/reservations. Each change is an
+// event named after its entity type; an "overflow" event means some were dropped and the client should
+// re-read its view. Browsers reconnect on their own when the stream times out.
+@RestController
+@RequestMapping("/api/events")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class EventController {
+    
+    private final ChangeEventBus changeEventBus;
+    
+    @Value("${hotel.events.stream-timeout-ms:1800000}")
+    private long streamTimeoutMillis;
+    
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(
+            @RequestParam(defaultValue = "COALESCE") ChangeEventBus.OverflowPolicy policy,
+            @RequestParam(required = false) Set<ChangeEvent.EntityType> types) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+        Set<ChangeEvent.EntityType> entityTypes = types == null || types.isEmpty()
+                ? EnumSet.allOf(ChangeEvent.EntityType.class) : EnumSet.copyOf(types);
+        ChangeEventBus.Subscription subscription = changeEventBus.subscribe(policy, entityTypes,
+                new ChangeEventBus.Sink() {
+                    @Override
+                    public void send(ChangeEvent event) throws IOException {
+                        emitter.send(SseEmitter.event()
+                                .name(event.getEntityType().name().toLowerCase())
+                                .data(event, MediaType.APPLICATION_JSON));
+                    }
+                    
+                    @Override
+                    public void overflowed(long dropped) throws IOException {
+                        emitter.send(SseEmitter.event().name("overflow").data(Map.of("dropped", dropped)));
+                    }
+                    
+                    @Override
+                    public void closed() {
+                        emitter.complete();
+                    }
+                });
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(error -> subscription.close());
+        return emitter;
+    }
+}
+
+// NdjsonWriter.java
+package com.hotel.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+@Component
+@RequiredArgsConstructor
+public class NdjsonWriter {
+    
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+    private static final int FLUSH_INTERVAL = 100;
+    
+    private final ObjectMapper objectMapper;
+    
+    public <T> void write(HttpServletResponse response, Consumer<Consumer<T>> producer) throws IOException {
+        response.setContentType(MEDIA_TYPE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        
+        try (SequenceWriter writer = objectMapper.writer()
+                .withRootValueSeparator("\n")
+                .writeValues(response.getOutputStream())) {
+            AtomicInteger rows = new AtomicInteger();
+            producer.accept(item -> {
+                try {
+                    writer.write(item);
+                    if (rows.incrementAndGet() % FLUSH_INTERVAL == 0) {
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
+
+// KeysetResponses.java
+package com.hotel.controller;
+
+import com.hotel.dto.KeysetPage;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import java.util.List;
+
+// List bodies stay plain JSON arrays; the keyset cursor travels in headers
+public final class KeysetResponses {
+    
+    public static final String NEXT_AFTER = "X-Next-After";
+    public static final String LINK = HttpHeaders.LINK;
+    
+    private KeysetResponses() {
+    }
+    
+    public static <T> ResponseEntity<List<T>> ok(KeysetPage<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextAfter() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", page.getNextAfter())
+                    .toUriString();
+            response.header(NEXT_AFTER, String.valueOf(page.getNextAfter()))
+                    .header(LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return response.body(page.getItems());
+    }
+}
+
+// ============================================
+// EXCEPTION HANDLING
+// ============================================
+
+// ResourceNotFoundException.java
+package com.hotel.exception;
+
+public class ResourceNotFoundException extends RuntimeException {
+    public ResourceNotFoundException(String message) {
+        super(message);
+    }
+}
+
+// BookingConflictException.java
+package com.hotel.exception;
+
+public class BookingConflictException extends RuntimeException {
+    public BookingConflictException(String message) {
+        super(message);
+    }
+}
+
+// LoginThrottledException.java
+package com.hotel.exception;
+
+public class LoginThrottledException extends RuntimeException {
+    private final long retryAfterSeconds;
+    
+    public LoginThrottledException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
+
+// InvalidStateTransitionException.java
+package com.hotel.exception;
+
+public class InvalidStateTransitionException extends RuntimeException {
+    public InvalidStateTransitionException(String message) {
+        super(message);
+    }
+}
+
+// InvalidIdempotencyKeyException.java
+package com.hotel.exception;
+
+public class InvalidIdempotencyKeyException extends RuntimeException {
+    public InvalidIdempotencyKeyException(String message) {
+        super(message);
+    }
+}
+
+// GlobalExceptionHandler.java
+package com.hotel.exception;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import java.util.HashMap;
+import java.util.Map;
+
+@RestControllerAdvice
+public class GlobalExceptionHandler {
+    
+    @ExceptionHandler(ResourceNotFoundException.class)
+    public ResponseEntity<Map<String, String>> handleResourceNotFound(ResourceNotFoundException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+    }
+    
+    @ExceptionHandler(BookingConflictException.class)
+    public ResponseEntity<Map<String, String>> handleBookingConflict(BookingConflictException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+    }
+    
+    @ExceptionHandler(InvalidStateTransitionException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidStateTransition(InvalidStateTransitionException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+    }
+    
+    // Paths without automatic retry surface a lost @Version race as a conflict the client can retry
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<Map<String, String>> handleOptimisticLockingFailure(OptimisticLockingFailureException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "The resource was modified concurrently, please retry");
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+    }
+    
+    @ExceptionHandler(InvalidIdempotencyKeyException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidIdempotencyKey(InvalidIdempotencyKeyException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(error);
+    }
+    
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<Map<String, String>> handleGenericException(Exception ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+    }
+}
+
+// ============================================
+// PERFORMANCE CONFIGURATION
+// ============================================
+
+// DataSourceTuningProperties.java
+package com.hotel.config;
+
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+import java.time.Duration;
+
+// Bound from hotel.datasource.* under the perf profile; invalid values stop the application at startup
+@Data
+@Validated
+@ConfigurationProperties(prefix = "hotel.datasource")
+public class DataSourceTuningProperties {
+    
+    // Pool size = cores * connectionsPerCore + spindles, per the HikariCP sizing guidance
+    @Min(1)
+    @Max(16)
+    private int connectionsPerCore = 2;
+    
+    @Min(0)
+    @Max(64)
+    private int spindles = 1;
+    
+    // Overrides the core-based size when set
+    @Min(1)
+    private Integer maximumPoolSize;
+    
+    // Defaults to the pool size, i.e. a fixed-size pool
+    @Min(0)
+    private Integer minimumIdle;
+    
+    @NotNull
+    private Duration connectionTimeout = Duration.ofSeconds(3);
+    
+    // Keep below MySQL's wait_timeout so the server never closes a pooled connection first
+    @NotNull
+    private Duration maxLifetime = Duration.ofMinutes(30);
+    
+    private boolean cachePreparedStatements = true;
+    
+    @Min(25)
+    @Max(10000)
+    private int preparedStatementCacheSize = 250;
+    
+    @Min(256)
+    @Max(65536)
+    private int preparedStatementCacheSqlLimit = 2048;
+    
+    private boolean serverPreparedStatements = true;
+    
+    private boolean rewriteBatchedStatements = true;
+    
+    public int resolvePoolSize() {
+        if (maximumPoolSize != null) {
+            return maximumPoolSize;
+        }
+        return Runtime.getRuntime().availableProcessors() * connectionsPerCore + spindles;
+    }
+    
+    public int resolveMinimumIdle() {
+        return minimumIdle == null ? resolvePoolSize() : minimumIdle;
+    }
+    
+    @AssertTrue(message = "minimum-idle must not exceed the pool size")
+    public boolean isMinimumIdleWithinPool() {
+        return minimumIdle == null || minimumIdle <= resolvePoolSize();
+    }
+    
+    // Hikari rejects anything shorter
+    @AssertTrue(message = "connection-timeout must be at least 250ms")
+    public boolean isConnectionTimeoutSupported() {
+        return connectionTimeout == null || connectionTimeout.toMillis() >= 250;
+    }
+    
+    @AssertTrue(message = "max-lifetime must be at least 30s")
+    public boolean isMaxLifetimeSupported() {
+        return maxLifetime == null || maxLifetime.toSeconds() >= 30;
+    }
+}
+
+// DataSourceTuningConfig.java
+package com.hotel.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+// Applies DataSourceTuningProperties to the Hikari pool after Boot has bound spring.datasource.hikari.*,
+// before the pool opens its first connection.
+@Slf4j
+@Configuration
+@Profile("perf")
+@EnableConfigurationProperties(DataSourceTuningProperties.class)
+public class DataSourceTuningConfig {
+    
+    @Bean
+    public static BeanPostProcessor hikariTuningPostProcessor(ObjectProvider<DataSourceTuningProperties> tuning) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource dataSource) {
+                    tune(dataSource, tuning.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+    
+    static void tune(HikariDataSource dataSource, DataSourceTuningProperties tuning) {
+        dataSource.setMaximumPoolSize(tuning.resolvePoolSize());
+        dataSource.setMinimumIdle(tuning.resolveMinimumIdle());
+        dataSource.setConnectionTimeout(tuning.getConnectionTimeout().toMillis());
+        dataSource.setMaxLifetime(tuning.getMaxLifetime().toMillis());
+        
+        // Connector/J settings; other drivers (H2 in the benchmarks) reject unknown properties
+        String url = dataSource.getJdbcUrl();
+        if (url != null && url.startsWith("jdbc:mysql:")) {
+            dataSource.addDataSourceProperty("cachePrepStmts", tuning.isCachePreparedStatements());
+            dataSource.addDataSourceProperty("prepStmtCacheSize", tuning.getPreparedStatementCacheSize());
+            dataSource.addDataSourceProperty("prepStmtCacheSqlLimit", tuning.getPreparedStatementCacheSqlLimit());
+            dataSource.addDataSourceProperty("useServerPrepStmts", tuning.isServerPreparedStatements());
+            dataSource.addDataSourceProperty("rewriteBatchedStatements", tuning.isRewriteBatchedStatements());
+            dataSource.addDataSourceProperty("cacheResultSetMetadata", true);
+            dataSource.addDataSourceProperty("cacheServerConfiguration", true);
+            dataSource.addDataSourceProperty("elideSetAutoCommits", true);
+            dataSource.addDataSourceProperty("maintainTimeStats", false);
+        }
+        log.info("Tuned connection pool: maximumPoolSize={} minimumIdle={} connectionTimeout={}ms driverTuning={}",
+                dataSource.getMaximumPoolSize(), dataSource.getMinimumIdle(), dataSource.getConnectionTimeout(),
+                url != null && url.startsWith("jdbc:mysql:"));
+    }
+}
+
+// VirtualThreadConfig.java
+package com.hotel.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import java.util.concurrent.Executors;
+
+// hotel.threads.virtual=true runs each Tomcat request and each async task on its own virtual
+// thread, so requests blocked on MySQL or a slow gateway no longer hold one of Tomcat's 200 workers.
+// The Hikari pool still bounds concurrent database work; requests queue for a connection instead.
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "hotel.threads.virtual", havingValue = "true")
+public class VirtualThreadConfig {
+    
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        log.info("Serving requests on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+    
+    // Replaces Boot's pooled executor for @Async methods and async MVC handlers
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, "taskExecutor"})
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+    }
+}
+
+// ============================================
+// SECURITY CONFIGURATION
+// ============================================
+
+// SecurityConfig.java
+package com.hotel.config;
+
+import com.hotel.security.JwtAuthenticationFilter;
+import com.hotel.security.JwtTokenProvider;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+
+@Configuration
+@EnableWebSecurity
+@RequiredArgsConstructor
+public class SecurityConfig {
+    
+    private final JwtTokenProvider jwtTokenProvider;
+    
+    @Value("${security.bcrypt.strength:10}")
+    private int bcryptStrength;
+    
+    // Off until every client sends the token issued at login
+    @Value("${security.jwt.required:false}")
+    private boolean jwtRequired;
+    
+    @Bean
+    public PasswordEncoder passwordEncoder() {
+        return new BCryptPasswordEncoder(bcryptStrength);
+    }
+    
+    @Bean
+    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+        http
+            .csrf(csrf -> csrf.disable())
+            .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+            .addFilterBefore(new JwtAuthenticationFilter(jwtTokenProvider), UsernamePasswordAuthenticationFilter.class)
+            .authorizeHttpRequests(auth -> {
+                auth.requestMatchers("/actuator/health", "/actuator/prometheus").permitAll()
+                    .requestMatchers("/api/auth/**").permitAll();
+                if (jwtRequired) {
+                    auth.requestMatchers("/api/**").authenticated();
+                } else {
+                    auth.requestMatchers("/api/**").permitAll();
+                }
+                auth.anyRequest().authenticated();
+            });
+        
+        return http.build();
+    }
+}
+
+// AuthenticatedUser.java
+package com.hotel.security;
+
+import com.hotel.model.User;
+import lombok.Value;
+
+// Principal restored from a verified token; no database lookup is involved
+@Value
+public class AuthenticatedUser {
+    Long userId;
+    String username;
+    User.Role role;
+}
+
+// JwtTokenProvider.java
+package com.hotel.security;
+
+import com.hotel.model.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.Date;
+import java.util.Optional;
+
+@Slf4j
+@Component
+public class JwtTokenProvider {
+    
+    private static final String USER_ID = "uid";
+    private static final String ROLE = "role";
+    
+    @Value("${jwt.secret}")
+    private String secret;
+    
+    @Value("${jwt.expiration}")
+    private long expirationMillis;
+    
+    private Key key;
+    private JwtParser parser;
+    
+    @PostConstruct
+    void init() {
+        key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        parser = Jwts.parserBuilder().setSigningKey(key).build();
+    }
+    
+    public String createToken(AuthenticatedUser user) {
+        Date issuedAt = new Date();
+        return Jwts.builder()
+                .setSubject(user.getUsername())
+                .claim(USER_ID, user.getUserId())
+                .claim(ROLE, user.getRole().name())
+                .setIssuedAt(issuedAt)
+                .setExpiration(new Date(issuedAt.getTime() + expirationMillis))
+                .signWith(key, SignatureAlgorithm.HS256)
+                .compact();
+    }
+    
+    public long getExpirationMillis() {
+        return expirationMillis;
+    }
+    
+    public Optional<AuthenticatedUser> parse(String token) {
         try {
-            User user = userService.authenticate(request);
-            Map<String, Object> response = new HashMap<>();
-            response.put("message", "Login successful");
-            response.put("userId", user.getUserId());
-            response.put("username", user.getUsername());
-            response.put("role", user.getRole());
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            return Optional.of(new AuthenticatedUser(claims.get(USER_ID, Long.class), claims.getSubject(),
+                    User.Role.valueOf(claims.get(ROLE, String.class))));
+        } catch (JwtException | IllegalArgumentException e) {
+            log.debug("Rejected token: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
+
+// JwtAuthenticationFilter.java
+package com.hotel.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import java.io.IOException;
+import java.util.List;
+
+// Created by SecurityConfig rather than registered as a bean, so it only runs inside the security chain
+@RequiredArgsConstructor
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+    
+    private static final String BEARER = "Bearer ";
+    
+    private final JwtTokenProvider jwtTokenProvider;
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header != null && header.startsWith(BEARER)) {
+            jwtTokenProvider.parse(header.substring(BEARER.length())).ifPresent(user -> {
+                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                        user, null, List.of(new SimpleGrantedAuthority("ROLE_" + user.getRole())));
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+            });
+        }
+        chain.doFilter(request, response);
+    }
+}
+
+// CredentialCache.java
+package com.hotel.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+
+// Remembers recently verified logins as a salted SHA-256 digest so clients that log in
+// repeatedly skip BCrypt until the entry expires. The salt is random per process. Only the
+// user's id, name and role are kept, never the entity or its password hash; nothing in the
+// application changes a password or role, so entries are only ever retired by expiry.
+@Component
+public class CredentialCache {
+    
+    private final byte[] salt = new byte[32];
+    private Cache<String, VerifiedCredential> credentials;
+    
+    @Value("${security.credential-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+    
+    @Value("${security.credential-cache.max-size:10000}")
+    private long maxSize;
+    
+    @PostConstruct
+    void init() {
+        new SecureRandom().nextBytes(salt);
+        credentials = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .build();
+    }
+    
+    public AuthenticatedUser get(String username, String password) {
+        VerifiedCredential credential = credentials.getIfPresent(username);
+        if (credential == null || !MessageDigest.isEqual(credential.digest, digest(username, password))) {
+            return null;
+        }
+        return credential.user;
+    }
+    
+    public void put(String username, String password, AuthenticatedUser user) {
+        credentials.put(username, new VerifiedCredential(digest(username, password), user));
+    }
+    
+    private byte[] digest(String username, String password) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(salt);
+            sha256.update(username.getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) 0);
+            return sha256.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    private static final class VerifiedCredential {
+        private final byte[] digest;
+        private final AuthenticatedUser user;
+        
+        VerifiedCredential(byte[] digest, AuthenticatedUser user) {
+            this.digest = digest;
+            this.user = user;
+        }
+    }
+}
+
+// LoginRateLimiter.java
+package com.hotel.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hotel.exception.LoginThrottledException;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.time.Duration;
+
+// Token bucket per username in front of BCrypt, so a login flood for one account costs at most
+// security.login.burst hashes and then security.login.per-minute hashes per minute.
+@Component
+public class LoginRateLimiter {
+    
+    private Cache<String, TokenBucket> buckets;
+    
+    @Value("${security.login.burst:10}")
+    private int burst;
+    
+    @Value("${security.login.per-minute:10}")
+    private int perMinute;
+    
+    @PostConstruct
+    void init() {
+        buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .maximumSize(100_000)
+                .build();
+    }
+    
+    public void acquire(String username) {
+        long waitMillis = buckets.get(username, key -> new TokenBucket(burst)).tryConsume(burst, perMinute);
+        if (waitMillis > 0) {
+            throw new LoginThrottledException("Too many login attempts, try again later",
+                    Math.max(1, (waitMillis + 999) / 1000));
+        }
+    }
+    
+    private static final class TokenBucket {
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+        
+        TokenBucket(int capacity) {
+            this.tokens = capacity;
+        }
+        
+        // Returns 0 when a token was taken, otherwise the milliseconds until one is available
+        synchronized long tryConsume(int capacity, int perMinute) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * perMinute / 60_000_000_000.0);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) * 60_000 / perMinute);
+        }
+    }
+}
+
+// ============================================
+// benchmarks/pom.xml
+// ============================================
+<?xml version="1.0" encoding="UTF-8"?>
+<project xmlns="http://maven.apache.org/POM/4.0.0"
+         xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance"
+         xsi:schemaLocation="http://maven.apache.org/POM/4.0.0 
+         https://maven.apache.org/xsd/maven-4.0.0.xsd">
+    <modelVersion>4.0.0</modelVersion>
+    
+    <parent>
+        <groupId>org.springframework.boot</groupId>
+        <artifactId>spring-boot-starter-parent</artifactId>
+        <version>3.1.5</version>
+    </parent>
+    
+    <groupId>com.hotel</groupId>
+    <artifactId>hotel-reservation-benchmarks</artifactId>
+    <version>1.0.0</version>
+    
+    <properties>
+        <java.version>21</java.version>
+        <jmh.version>1.37</jmh.version>
+        <jmh.args></jmh.args>
+    </properties>
+    
+    <dependencies>
+        <dependency>
+            <groupId>com.hotel</groupId>
+            <artifactId>hotel-reservation-system</artifactId>
+            <version>1.0.0</version>
+        </dependency>
+        <dependency>
+            <groupId>com.h2database</groupId>
+            <artifactId>h2</artifactId>
+        </dependency>
+        <dependency>
+            <groupId>org.openjdk.jmh</groupId>
+            <artifactId>jmh-core</artifactId>
+            <version>${jmh.version}</version>
+        </dependency>
+        <dependency>
+            <groupId>org.openjdk.jmh</groupId>
+            <artifactId>jmh-generator-annprocess</artifactId>
+            <version>${jmh.version}</version>
+            <scope>provided</scope>
+        </dependency>
+        <dependency>
+            <groupId>org.springframework.boot</groupId>
+            <artifactId>spring-boot-starter-test</artifactId>
+            <scope>test</scope>
+        </dependency>
+    </dependencies>
+    
+    <build>
+        <plugins>
+            <plugin>
+                <groupId>org.codehaus.mojo</groupId>
+                <artifactId>exec-maven-plugin</artifactId>
+                <configuration>
+                    <executable>java</executable>
+                    <commandlineArgs>-classpath %classpath com.hotel.benchmarks.BenchmarkRunner ${jmh.args}</commandlineArgs>
+                </configuration>
+            </plugin>
+        </plugins>
+    </build>
+</project>
+
+// ============================================
+// BENCHMARK CLASSES (benchmarks module)
+// ============================================
+
+// BenchmarkConfig.java
+package com.hotel.benchmarks;
+
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+// Replaces the SMTP sender so the email outbox drains instantly and offline
+@Configuration
+public class BenchmarkConfig {
+    
+    @Bean
+    public JavaMailSender javaMailSender() {
+        return new JavaMailSenderImpl() {
+            @Override
+            public void send(SimpleMailMessage... simpleMessages) {
+            }
+            
+            @Override
+            public void send(MimeMessage... mimeMessages) {
+            }
+        };
+    }
+}
+
+// HotelContext.java
+package com.hotel.benchmarks;
+
+import com.hotel.HotelReservationApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class HotelContext {
+    
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+    
+    static {
+        DEFAULTS.put("server.port", "0");
+        DEFAULTS.put("spring.main.banner-mode", "off");
+        DEFAULTS.put("spring.datasource.url", h2Url("hotel"));
+        DEFAULTS.put("spring.datasource.username", "sa");
+        DEFAULTS.put("spring.datasource.password", "");
+        DEFAULTS.put("spring.datasource.driver-class-name", "org.h2.Driver");
+        DEFAULTS.put("spring.jpa.hibernate.ddl-auto", "create");
+        DEFAULTS.put("spring.jpa.show-sql", "false");
+        DEFAULTS.put("spring.jpa.properties.hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        DEFAULTS.put("logging.level.root", "WARN");
+        DEFAULTS.put("logging.level.com.hotel", "WARN");
+    }
+    
+    private HotelContext() {
+    }
+    
+    public static ConfigurableApplicationContext start() {
+        return start(Map.of());
+    }
+    
+    // Contexts that run in the same JVM need their own database, or ddl-auto drops the other's tables
+    public static String h2Url(String database) {
+        return "jdbc:h2:mem:" + database + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    }
+    
+    // Repeating a command-line property joins the values, so overrides replace the defaults here
+    public static ConfigurableApplicationContext start(Map<String, String> overrides, Class<?>... extraSources) {
+        Map<String, String> properties = new LinkedHashMap<>(DEFAULTS);
+        properties.putAll(overrides);
+        String[] args = properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+        List<Class<?>> sources = new ArrayList<>(List.of(HotelReservationApplication.class, BenchmarkConfig.class));
+        sources.addAll(List.of(extraSources));
+        return SpringApplication.run(sources.toArray(Class<?>[]::new), args);
+    }
+}
+
+// DatasetSeeder.java
+package com.hotel.benchmarks;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Bulk-loads the catalog, customers and reservation history with JDBC batches; going
+// through the services would take longer than the benchmarks themselves at 1M rows.
+public class DatasetSeeder {
+    
+    public static final int ROOMS = 200;
+    public static final int NIGHTS_PER_STAY = 2;
+    public static final int DAYS_PER_SLOT = NIGHTS_PER_STAY + 1;
+    public static final String PASSWORD = "benchmark";
+    
+    private static final int BATCH_SIZE = 5000;
+    private static final String[][] ROOM_TYPES = {
+            {"Standard", "100.00", "2"},
+            {"Deluxe", "180.00", "2"},
+            {"Family", "220.00", "5"},
+            {"Suite", "350.00", "4"}
+    };
+    private static final String[] STATUSES = {"COMPLETED", "CONFIRMED", "PENDING", "CANCELLED"};
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final int reservations;
+    private final int customers;
+    private final LocalDate historyStart;
+    
+    public DatasetSeeder(JdbcTemplate jdbcTemplate, int reservations) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.reservations = reservations;
+        this.customers = Math.max(100, reservations / 20);
+        // Centre the history on today so searches see past, current and future stays
+        this.historyStart = LocalDate.now().minusDays((long) slots() * DAYS_PER_SLOT / 2);
+    }
+    
+    public void seed(String passwordHash) {
+        LocalDateTime now = LocalDateTime.now();
+        
+        List<Object[]> rows = new ArrayList<>();
+        for (String[] type : ROOM_TYPES) {
+            rows.add(new Object[] {type[0], new BigDecimal(type[1]), Integer.valueOf(type[2])});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO room_types (type_name, base_price, max_occupancy) VALUES (?, ?, ?)", rows);
+        
+        rows.clear();
+        for (int i = 0; i < ROOMS; i++) {
+            rows.add(new Object[] {"R" + (i + 1), i % ROOM_TYPES.length + 1, i / 20 + 1, "AVAILABLE"});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO rooms (room_number, room_type_id, floor_number, status, version) "
+                + "VALUES (?, ?, ?, ?, 0)", rows);
+        
+        rows.clear();
+        for (int i = 0; i < customers; i++) {
+            rows.add(new Object[] {username(i), passwordHash, username(i) + "@bench.local", "CUSTOMER",
+                    Timestamp.valueOf(now)});
+            flush("INSERT INTO users (username, password, email, role, created_at) VALUES (?, ?, ?, ?, ?)", rows, false);
+        }
+        flush("INSERT INTO users (username, password, email, role, created_at) VALUES (?, ?, ?, ?, ?)", rows, true);
+        
+        for (int i = 0; i < customers; i++) {
+            rows.add(new Object[] {i + 1, "Guest", "No. " + (i + 1)});
+            flush("INSERT INTO customers (user_id, first_name, last_name) VALUES (?, ?, ?)", rows, false);
+        }
+        flush("INSERT INTO customers (user_id, first_name, last_name) VALUES (?, ?, ?)", rows, true);
+        
+        String insertReservation = "INSERT INTO reservations (reservation_id, customer_id, room_id, check_in_date, "
+                + "check_out_date, number_of_guests, total_amount, status, created_at, version) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+        for (int i = 0; i < reservations; i++) {
+            LocalDate checkIn = historyStart.plusDays((long) (i / ROOMS) * DAYS_PER_SLOT);
+            rows.add(new Object[] {i + 1, i % customers + 1, i % ROOMS + 1, Date.valueOf(checkIn),
+                    Date.valueOf(checkIn.plusDays(NIGHTS_PER_STAY)), 2, new BigDecimal("200.00"),
+                    STATUSES[i % STATUSES.length], Timestamp.valueOf(now)});
+            flush(insertReservation, rows, false);
+        }
+        flush(insertReservation, rows, true);
+        // Reservation ids are allocated in pooled blocks of 50, so leave a block of headroom;
+        // MySQL has no sequences and Hibernate keeps the next value in a table instead
+        if (isMySql()) {
+            jdbcTemplate.update("UPDATE reservations_seq SET next_val = ?", reservations + 101);
+        } else {
+            jdbcTemplate.execute("ALTER SEQUENCE reservations_seq RESTART WITH " + (reservations + 101));
+        }
+    }
+    
+    private boolean isMySql() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        return "MySQL".equalsIgnoreCase(product);
+    }
+    
+    public int getCustomers() {
+        return customers;
+    }
+    
+    public LocalDate getHistoryStart() {
+        return historyStart;
+    }
+    
+    public LocalDate getHistoryEnd() {
+        return historyStart.plusDays((long) slots() * DAYS_PER_SLOT);
+    }
+    
+    public static String username(int index) {
+        return "guest" + index;
+    }
+    
+    // Ids of the seeded CONFIRMED and PENDING reservations, the only ones that can take a payment
+    public static long payableReservationId(long index) {
+        return index / 2 * STATUSES.length + index % 2 + 2;
+    }
+    
+    private int slots() {
+        return (reservations + ROOMS - 1) / ROOMS;
+    }
+    
+    private void flush(String sql, List<Object[]> rows, boolean force) {
+        if (!rows.isEmpty() && (force || rows.size() >= BATCH_SIZE)) {
+            jdbcTemplate.batchUpdate(sql, rows);
+            rows.clear();
         }
     }
 }
 
-// RoomController.java
-package com.hotel.controller;
+// HotelState.java
+package com.hotel.benchmarks;
+
+import com.hotel.service.AvailabilityIndex;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One application context and seeded dataset per fork and dataset size
+@State(Scope.Benchmark)
+public class HotelState {
+    
+    @Param({"1000", "100000", "1000000"})
+    public int reservations;
+    
+    public ConfigurableApplicationContext context;
+    public DatasetSeeder dataset;
+    
+    private final AtomicLong bookings = new AtomicLong();
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = HotelContext.start();
+        dataset = new DatasetSeeder(context.getBean(JdbcTemplate.class), reservations);
+        dataset.seed(context.getBean(PasswordEncoder.class).encode(DatasetSeeder.PASSWORD));
+        context.getBean(AvailabilityIndex.class).rebuild();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+    
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+    
+    // Each call returns a room and check-in date past the seeded history that no other call gets
+    public long nextBooking() {
+        return bookings.getAndIncrement();
+    }
+    
+    public LocalDate bookingCheckIn(long booking) {
+        return dataset.getHistoryEnd().plusDays(30 + (booking / DatasetSeeder.ROOMS) * DatasetSeeder.DAYS_PER_SLOT);
+    }
+}
+
+// HotelBenchmarks.java
+package com.hotel.benchmarks;
 
-import com.hotel.model.Room;
-import com.hotel.model.RoomType;
+import com.hotel.dto.LoginRequest;
+import com.hotel.dto.PaymentRequest;
+import com.hotel.dto.ReservationRequest;
+import com.hotel.dto.RoomView;
+import com.hotel.model.Payment;
+import com.hotel.model.Reservation;
+import com.hotel.security.AuthenticatedUser;
+import com.hotel.service.PaymentService;
+import com.hotel.service.ReservationService;
 import com.hotel.service.RoomService;
-import lombok.RequiredArgsConstructor;
-import org.springframework.format.annotation.DateTimeFormat;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.*;
+import com.hotel.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
-@RestController
-@RequestMapping("/api/rooms")
-@RequiredArgsConstructor
-@CrossOrigin(origins = "*")
-public class RoomController {
-    
-    private final RoomService roomService;
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class HotelBenchmarks {
     
-    @GetMapping
-    public ResponseEntity<List<Room>> getAllRooms() {
-        return ResponseEntity.ok(roomService.getAllRooms());
+    @Benchmark
+    public Reservation createReservation(HotelState state) {
+        long booking = state.nextBooking();
+        LocalDate checkIn = state.bookingCheckIn(booking);
+        
+        ReservationRequest request = new ReservationRequest();
+        request.setRoomId(booking % DatasetSeeder.ROOMS + 1);
+        request.setCheckInDate(checkIn);
+        request.setCheckOutDate(checkIn.plusDays(DatasetSeeder.NIGHTS_PER_STAY));
+        request.setNumberOfGuests(2);
+        
+        long userId = booking % state.dataset.getCustomers() + 1;
+        return state.bean(ReservationService.class).createReservation(userId, request);
     }
     
-    @GetMapping("/{id}")
-    public ResponseEntity<Room> getRoomById(@PathVariable Long id) {
-        return ResponseEntity.ok(roomService.getRoomById(id));
+    @Benchmark
+    public List<RoomView> getAvailableRooms(HotelState state) {
+        LocalDate start = state.dataset.getHistoryStart();
+        long span = ChronoUnit.DAYS.between(start, state.dataset.getHistoryEnd());
+        LocalDate checkIn = start.plusDays(ThreadLocalRandom.current().nextLong(span));
+        return state.bean(RoomService.class).getAvailableRooms(checkIn, checkIn.plusDays(3));
     }
     
-    @GetMapping("/available")
-    public ResponseEntity<List<Room>> getAvailableRooms(
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkIn,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate checkOut) {
-        return ResponseEntity.ok(roomService.getAvailableRooms(checkIn, checkOut));
+    @Benchmark
+    public Payment processPayment(HotelState state) {
+        PaymentRequest request = new PaymentRequest();
+        request.setReservationId(DatasetSeeder.payableReservationId(
+                ThreadLocalRandom.current().nextLong(state.reservations / 2)));
+        request.setAmount(new BigDecimal("200.00"));
+        request.setPaymentMethod(Payment.PaymentMethod.CREDIT_CARD);
+        return state.bean(PaymentService.class).processPayment(request);
     }
     
-    @GetMapping("/types")
-    public ResponseEntity<List<RoomType>> getAllRoomTypes() {
-        return ResponseEntity.ok(roomService.getAllRoomTypes());
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public AuthenticatedUser authenticate(HotelState state) {
+        LoginRequest request = new LoginRequest();
+        request.setUsername(DatasetSeeder.username(ThreadLocalRandom.current().nextInt(state.dataset.getCustomers())));
+        request.setPassword(DatasetSeeder.PASSWORD);
+        return state.bean(UserService.class).authenticate(request);
     }
+}
+
+// SerializationBenchmarks.java
+package com.hotel.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hotel.dto.ReservationView;
+import com.hotel.service.ReservationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Serialises reservation pages exactly as GET /api/reservations returns them
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SerializationBenchmarks {
     
-    @PostMapping
-    public ResponseEntity<Room> createRoom(@RequestBody Room room) {
-        return ResponseEntity.ok(roomService.createRoom(room));
+    @Param({"50", "500"})
+    public int pageSize;
+    
+    private ObjectMapper objectMapper;
+    private List<ReservationView> page;
+    
+    @Setup(Level.Trial)
+    public void setUp(HotelState state) {
+        objectMapper = state.bean(ObjectMapper.class);
+        page = state.bean(ReservationService.class).getReservations(null, pageSize, null, null, null).getItems();
     }
     
-    @PutMapping("/{id}/status")
-    public ResponseEntity<Room> updateRoomStatus(
-            @PathVariable Long id,
-            @RequestParam Room.RoomStatus status) {
-        return ResponseEntity.ok(roomService.updateRoomStatus(id, status));
+    @Benchmark
+    public byte[] serializeReservationPage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
     }
 }
 
-// ReservationController.java
-package com.hotel.controller;
+// JdbcTuningBenchmarks.java
+package com.hotel.benchmarks;
 
-import com.hotel.dto.ReservationRequest;
+import com.hotel.dto.GroupReservationRequest;
+import com.hotel.dto.PaymentRequest;
+import com.hotel.model.Payment;
 import com.hotel.model.Reservation;
+import com.hotel.service.AvailabilityIndex;
+import com.hotel.service.PaymentService;
 import com.hotel.service.ReservationService;
-import jakarta.validation.Valid;
-import lombok.RequiredArgsConstructor;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.*;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
 
-@RestController
-@RequestMapping("/api/reservations")
-@RequiredArgsConstructor
-@CrossOrigin(origins = "*")
-public class ReservationController {
+// Throughput of the write paths with the default settings against the perf profile. Batch
+// rewriting and the statement caches are Connector/J features, so point the run at a scratch
+// MySQL schema for the full comparison, e.g.
+//   -Djmh.args="JdbcTuning -jvmArgsAppend -Dbench.jdbc.url=jdbc:mysql://localhost:3306/hotel_bench"
+// Without it the run uses H2 and only the pool, logging and open-in-view settings differ.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Threads(16)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class JdbcTuningBenchmarks {
     
-    private final ReservationService reservationService;
+    static final int GROUP_SIZE = 20;
     
-    @GetMapping
-    public ResponseEntity<List<Reservation>> getAllReservations() {
-        return ResponseEntity.ok(reservationService.getAllReservations());
+    @State(Scope.Benchmark)
+    public static class TuningState {
+        
+        @Param({"default", "perf"})
+        public String profile;
+        
+        @Param({"100000"})
+        public int reservations;
+        
+        public ConfigurableApplicationContext context;
+        public DatasetSeeder dataset;
+        
+        private final AtomicLong groups = new AtomicLong();
+        
+        @Setup(Level.Trial)
+        public void setUp() {
+            Map<String, String> overrides = new HashMap<>();
+            overrides.put("spring.profiles.active", profile);
+            if ("default".equals(profile)) {
+                // What application.properties ships with
+                overrides.put("spring.jpa.show-sql", "true");
+                overrides.put("logging.level.com.hotel", "DEBUG");
+            }
+            String url = System.getProperty("bench.jdbc.url");
+            if (url != null) {
+                overrides.put("spring.datasource.url", url);
+                overrides.put("spring.datasource.username", System.getProperty("bench.jdbc.username", "root"));
+                overrides.put("spring.datasource.password", System.getProperty("bench.jdbc.password", ""));
+                overrides.put("spring.datasource.driver-class-name", "com.mysql.cj.jdbc.Driver");
+                overrides.put("spring.jpa.properties.hibernate.dialect", "org.hibernate.dialect.MySQLDialect");
+            }
+            context = HotelContext.start(overrides);
+            dataset = new DatasetSeeder(context.getBean(JdbcTemplate.class), reservations);
+            dataset.seed(context.getBean(PasswordEncoder.class).encode(DatasetSeeder.PASSWORD));
+            context.getBean(AvailabilityIndex.class).rebuild();
+        }
+        
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            context.close();
+        }
+        
+        public <T> T bean(Class<T> type) {
+            return context.getBean(type);
+        }
+        
+        // Each group takes GROUP_SIZE adjacent rooms on dates past the seeded history
+        public GroupReservationRequest nextGroup() {
+            long group = groups.getAndIncrement();
+            long groupsPerSlot = DatasetSeeder.ROOMS / GROUP_SIZE;
+            long firstRoom = group % groupsPerSlot * GROUP_SIZE + 1;
+            LocalDate checkIn = dataset.getHistoryEnd()
+                    .plusDays(30 + group / groupsPerSlot * DatasetSeeder.DAYS_PER_SLOT);
+            
+            GroupReservationRequest request = new GroupReservationRequest();
+            request.setRoomIds(LongStream.range(firstRoom, firstRoom + GROUP_SIZE).boxed().toList());
+            request.setCheckInDate(checkIn);
+            request.setCheckOutDate(checkIn.plusDays(DatasetSeeder.NIGHTS_PER_STAY));
+            request.setNumberOfGuests(2);
+            return request;
+        }
     }
     
-    @GetMapping("/{id}")
-    public ResponseEntity<Reservation> getReservationById(@PathVariable Long id) {
-        return ResponseEntity.ok(reservationService.getReservationById(id));
+    @Benchmark
+    public List<Reservation> createGroupReservation(TuningState state) {
+        long userId = ThreadLocalRandom.current().nextInt(state.dataset.getCustomers()) + 1;
+        return state.bean(ReservationService.class).createGroupReservation(userId, state.nextGroup());
     }
     
-    @GetMapping("/customer/{customerId}")
-    public ResponseEntity<List<Reservation>> getReservationsByCustomerId(@PathVariable Long customerId) {
-        return ResponseEntity.ok(reservationService.getReservationsByCustomerId(customerId));
+    @Benchmark
+    public Payment processPayment(TuningState state) {
+        PaymentRequest request = new PaymentRequest();
+        request.setReservationId(DatasetSeeder.payableReservationId(
+                ThreadLocalRandom.current().nextLong(state.reservations / 2)));
+        request.setAmount(new BigDecimal("200.00"));
+        request.setPaymentMethod(Payment.PaymentMethod.CREDIT_CARD);
+        return state.bean(PaymentService.class).processPayment(request);
+    }
+}
+
+// VirtualThreadLoadTest.java
+package com.hotel.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hotel.dto.ReservationRequest;
+import com.hotel.service.AvailabilityIndex;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Fires the same burst of concurrent requests at the application on Tomcat's platform threads and
+// then on virtual threads. Every request first waits on a simulated downstream call (payment gateway,
+// SMTP) so that blocked threads, not CPU, are what limits throughput. Run with e.g.
+//   mvn exec:java -Dexec.mainClass=com.hotel.benchmarks.VirtualThreadLoadTest -Dexec.args="5000 50"
+// (concurrent requests, downstream latency in ms); raise ulimit -n above twice the concurrency.
+// Add -Djdk.tracePinnedThreads=short to MAVEN_OPTS to list any remaining pinning.
+public class VirtualThreadLoadTest {
+    
+    private static final int RESERVATIONS = 10_000;
+    
+    public static void main(String[] args) throws Exception {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        long downstreamMillis = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        for (boolean virtual : new boolean[] {false, true}) {
+            System.out.println(run(virtual, concurrency, downstreamMillis));
+        }
+        System.exit(0);
     }
     
-    @PostMapping("/user/{userId}")
-    public ResponseEntity<Reservation> createReservation(
-            @PathVariable Long userId,
-            @Valid @RequestBody ReservationRequest request) {
-        Reservation reservation = reservationService.createReservation(userId, request);
-        return ResponseEntity.status(HttpStatus.CREATED).body(reservation);
+    private static String run(boolean virtual, int concurrency, long downstreamMillis) throws Exception {
+        try (ConfigurableApplicationContext context = HotelContext.start(Map.of(
+                "hotel.threads.virtual", String.valueOf(virtual),
+                "loadtest.downstream-latency-ms", String.valueOf(downstreamMillis),
+                "server.tomcat.max-connections", String.valueOf(concurrency + 100),
+                "server.tomcat.accept-count", String.valueOf(concurrency)), LoadTestConfig.class)) {
+            DatasetSeeder dataset = new DatasetSeeder(context.getBean(JdbcTemplate.class), RESERVATIONS);
+            dataset.seed(context.getBean(PasswordEncoder.class).encode(DatasetSeeder.PASSWORD));
+            context.getBean(AvailabilityIndex.class).rebuild();
+            
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(30))
+                    .build();
+            
+            long[] latencies = new long[concurrency];
+            AtomicInteger failures = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            long startedAt;
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < concurrency; i++) {
+                    HttpRequest request = request(i, baseUrl, dataset, objectMapper);
+                    int slot = i;
+                    clients.submit(() -> {
+                        start.await();
+                        long sent = System.nanoTime();
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        latencies[slot] = System.nanoTime() - sent;
+                        if (response.statusCode() >= 400) {
+                            failures.incrementAndGet();
+                        }
+                        return null;
+                    });
+                }
+                startedAt = System.nanoTime();
+                start.countDown();
+            }
+            long elapsed = System.nanoTime() - startedAt;
+            
+            Arrays.sort(latencies);
+            return String.format("%-8s requests=%d failures=%d throughput=%.0f req/s p50=%dms p99=%dms max=%dms",
+                    virtual ? "virtual" : "platform", concurrency, failures.get(),
+                    concurrency / (elapsed / 1e9), percentile(latencies, 0.50), percentile(latencies, 0.99),
+                    latencies[latencies.length - 1] / 1_000_000);
+        }
     }
     
-    @PutMapping("/{id}/status")
-    public ResponseEntity<Reservation> updateReservationStatus(
-            @PathVariable Long id,
-            @RequestParam Reservation.ReservationStatus status) {
-        return ResponseEntity.ok(reservationService.updateReservationStatus(id, status));
+    // Nine availability searches for every booking; each booking gets its own room and dates
+    private static HttpRequest request(int index, String baseUrl, DatasetSeeder dataset, ObjectMapper objectMapper)
+            throws IOException {
+        LocalDate checkIn = dataset.getHistoryEnd()
+                .plusDays(30 + (long) (index / DatasetSeeder.ROOMS) * DatasetSeeder.DAYS_PER_SLOT);
+        if (index % 10 != 0) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/api/rooms/available?checkIn=" + checkIn
+                    + "&checkOut=" + checkIn.plusDays(DatasetSeeder.NIGHTS_PER_STAY))).GET().build();
+        }
+        ReservationRequest booking = new ReservationRequest();
+        booking.setRoomId((long) index % DatasetSeeder.ROOMS + 1);
+        booking.setCheckInDate(checkIn);
+        booking.setCheckOutDate(checkIn.plusDays(DatasetSeeder.NIGHTS_PER_STAY));
+        booking.setNumberOfGuests(2);
+        long userId = index % dataset.getCustomers() + 1;
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/api/reservations/user/" + userId))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(booking)))
+                .build();
     }
     
-    @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteReservation(@PathVariable Long id) {
-        reservationService.deleteReservation(id);
-        return ResponseEntity.noContent().build();
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(fraction * sorted.length))] / 1_000_000;
+    }
+    
+    @Configuration
+    static class LoadTestConfig {
+        
+        // Stands in for a blocking call to a slow downstream service made on the request thread
+        @Bean
+        public OncePerRequestFilter simulatedDownstreamLatency(
+                @Value("${loadtest.downstream-latency-ms:0}") long latencyMillis) {
+            return new OncePerRequestFilter() {
+                @Override
+                protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                                FilterChain chain) throws ServletException, IOException {
+                    try {
+                        Thread.sleep(latencyMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    chain.doFilter(request, response);
+                }
+            };
+        }
     }
 }
 
-// PaymentController.java
-package com.hotel.controller;
+// BookingLoadTest.java
+package com.hotel.benchmarks;
 
-import com.hotel.dto.PaymentRequest;
-import com.hotel.model.Payment;
-import com.hotel.service.PaymentService;
-import jakarta.validation.Valid;
-import lombok.RequiredArgsConstructor;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hotel.dto.ReservationRequest;
+import com.hotel.service.AvailabilityIndex;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
-@RestController
-@RequestMapping("/api/payments")
-@RequiredArgsConstructor
-@CrossOrigin(origins = "*")
-public class PaymentController {
+// Books random stays on random rooms over HTTP as fast as the clients can send them, first with the
+// in-memory availability check alone and then with booking.database-lock, and reports bookings/s.
+// The date window is sized so that about half the attempts collide with an earlier booking. At the
+// end no two blocking stays of a room may overlap; the run exits non-zero if any do, or if a request
+// fails with anything but a booking conflict. Run with e.g.
+//   mvn exec:java -Dexec.mainClass=com.hotel.benchmarks.BookingLoadTest -Dexec.args="20000 64"
+// (booking attempts, concurrent clients).
+public class BookingLoadTest {
     
-    private final PaymentService paymentService;
+    private static final int RESERVATIONS = 10_000;
+    private static final int MAX_WINDOW_DAYS = 600;
     
-    @GetMapping
-    public ResponseEntity<List<Payment>> getAllPayments() {
-        return ResponseEntity.ok(paymentService.getAllPayments());
+    // Same day rule as the booking path: the check-out day of one stay blocks the check-in of the next
+    public static final String OVERLAPPING_PAIRS = "SELECT COUNT(*) FROM reservations a "
+            + "JOIN reservations b ON b.room_id = a.room_id AND b.reservation_id > a.reservation_id "
+            + "WHERE a.status IN ('CONFIRMED', 'PENDING') AND b.status IN ('CONFIRMED', 'PENDING') "
+            + "AND a.check_in_date <= b.check_out_date AND a.check_out_date >= b.check_in_date";
+    
+    public static void main(String[] args) throws Exception {
+        int attempts = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        boolean clean = true;
+        for (boolean databaseLock : new boolean[] {false, true}) {
+            clean &= run(databaseLock, attempts, clients);
+        }
+        System.exit(clean ? 0 : 1);
     }
     
-    @GetMapping("/{id}")
-    public ResponseEntity<Payment> getPaymentById(@PathVariable Long id) {
-        return ResponseEntity.ok(paymentService.getPaymentById(id));
+    // Prints the run's figures and returns whether every attempt was answered and nothing overlaps
+    private static boolean run(boolean databaseLock, int attempts, int clients) throws Exception {
+        try (ConfigurableApplicationContext context = HotelContext.start(Map.of(
+                "spring.datasource.url", HotelContext.h2Url("booking-load-" + databaseLock),
+                "booking.database-lock", String.valueOf(databaseLock)))) {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            DatasetSeeder dataset = new DatasetSeeder(jdbcTemplate, RESERVATIONS);
+            dataset.seed(context.getBean(PasswordEncoder.class).encode(DatasetSeeder.PASSWORD));
+            context.getBean(AvailabilityIndex.class).rebuild();
+            
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+            HttpClient client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(Duration.ofSeconds(30))
+                    .build();
+            LocalDate start = dataset.getHistoryEnd().plusDays(30);
+            int windowDays = Math.min(MAX_WINDOW_DAYS,
+                    Math.max(30, attempts * DatasetSeeder.DAYS_PER_SLOT / DatasetSeeder.ROOMS));
+            
+            AtomicInteger booked = new AtomicInteger();
+            AtomicInteger conflicts = new AtomicInteger();
+            AtomicInteger failures = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(clients);
+            List<Future<?>> workers = new ArrayList<>();
+            long started = System.nanoTime();
+            for (int worker = 0; worker < clients; worker++) {
+                int seed = worker;
+                int share = attempts / clients + (worker < attempts % clients ? 1 : 0);
+                workers.add(pool.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < share; i++) {
+                        ReservationRequest booking = new ReservationRequest();
+                        booking.setRoomId((long) random.nextInt(DatasetSeeder.ROOMS) + 1);
+                        LocalDate checkIn = start.plusDays(random.nextInt(windowDays));
+                        booking.setCheckInDate(checkIn);
+                        booking.setCheckOutDate(checkIn.plusDays(random.nextInt(3) + 1));
+                        booking.setNumberOfGuests(2);
+                        long userId = random.nextInt(dataset.getCustomers()) + 1;
+                        HttpRequest request = HttpRequest.newBuilder(
+                                        URI.create(baseUrl + "/api/reservations/user/" + userId))
+                                .header("Content-Type", "application/json")
+                                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(booking)))
+                                .build();
+                        int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        if (status < 300) {
+                            booked.incrementAndGet();
+                        } else if (status == 409) {
+                            conflicts.incrementAndGet();
+                        } else {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : workers) {
+                result.get();
+            }
+            long elapsed = System.nanoTime() - started;
+            pool.shutdown();
+            
+            long overlappingPairs = jdbcTemplate.queryForObject(OVERLAPPING_PAIRS, Long.class);
+            System.out.println(String.format("booking.database-lock=%-5s attempts=%d booked=%d conflicts=%d "
+                            + "failures=%d throughput=%.0f attempts/s %.0f bookings/s overlapping-pairs=%d",
+                    databaseLock, attempts, booked.get(), conflicts.get(), failures.get(), attempts * 1e9 / elapsed,
+                    booked.get() * 1e9 / elapsed, overlappingPairs));
+            return overlappingPairs == 0 && failures.get() == 0;
+        }
     }
+}
+
+// BenchmarkRunner.java
+package com.hotel.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs every benchmark (or those selected by the usual JMH arguments) and writes the
+// results as JSON, e.g. mvn exec:exec -Djmh.args="-p reservations=1000 -rff target/1.0.0.json"
+public class BenchmarkRunner {
     
-    @PostMapping
-    public ResponseEntity<Payment> processPayment(@Valid @RequestBody PaymentRequest request) {
-        Payment payment = paymentService.processPayment(request);
-        return ResponseEntity.status(HttpStatus.CREATED).body(payment);
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .parent(commandLine)
+                .resultFormat(ResultFormatType.JSON)
+                .result(commandLine.getResult().orElse("target/jmh-result.json"));
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include("com\\.hotel\\.benchmarks\\..*");
+        }
+        new Runner(options.build()).run();
     }
 }
 
 // ============================================
-// EXCEPTION HANDLING
+// TEST CLASSES (benchmarks module)
 // ============================================
 
-// ResourceNotFoundException.java
-package com.hotel.exception;
+// ConcurrentBookingTest.java
+package com.hotel.benchmarks;
 
-public class ResourceNotFoundException extends RuntimeException {
-    public ResourceNotFoundException(String message) {
-        super(message);
+import com.hotel.dto.ReservationRequest;
+import com.hotel.exception.BookingConflictException;
+import com.hotel.service.AvailabilityIndex;
+import com.hotel.service.ReservationService;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Every thread alternates between a few shared rooms on random overlapping dates and a room of
+// its own on dates nobody else wants. The shared rooms must end up with no two blocking stays
+// that overlap, and every booking of an own room must go through.
+// BookingLoadTest runs the same check at full load.
+class ConcurrentBookingTest {
+    
+    private static final int THREADS = 16;
+    private static final int BOOKINGS_PER_THREAD = 40;
+    private static final int SHARED_ROOMS = 4;
+    private static final int SHARED_DAYS = 20;
+    
+    @ParameterizedTest(name = "booking.database-lock={0}")
+    @ValueSource(booleans = {false, true})
+    void concurrentBookingsNeverOverlap(boolean databaseLock) throws Exception {
+        try (ConfigurableApplicationContext context = HotelContext.start(Map.of(
+                "spring.datasource.url", HotelContext.h2Url("concurrent-booking-" + databaseLock),
+                "booking.database-lock", String.valueOf(databaseLock)))) {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            DatasetSeeder dataset = new DatasetSeeder(jdbcTemplate, 1000);
+            dataset.seed(context.getBean(PasswordEncoder.class).encode(DatasetSeeder.PASSWORD));
+            context.getBean(AvailabilityIndex.class).rebuild();
+            
+            ReservationService reservationService = context.getBean(ReservationService.class);
+            LocalDate start = dataset.getHistoryEnd().plusDays(30);
+            AtomicInteger sharedBooked = new AtomicInteger();
+            AtomicInteger conflicts = new AtomicInteger();
+            AtomicInteger ownBooked = new AtomicInteger();
+            CountDownLatch go = new CountDownLatch(1);
+            
+            ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+            List<Future<?>> workers = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int worker = thread;
+                workers.add(pool.submit(() -> {
+                    Random random = new Random(worker);
+                    go.await();
+                    for (int i = 0; i < BOOKINGS_PER_THREAD; i++) {
+                        ReservationRequest request = new ReservationRequest();
+                        request.setNumberOfGuests(2);
+                        boolean shared = i % 2 == 0;
+                        LocalDate checkIn;
+                        if (shared) {
+                            request.setRoomId((long) random.nextInt(SHARED_ROOMS) + 1);
+                            checkIn = start.plusDays(random.nextInt(SHARED_DAYS));
+                            request.setCheckOutDate(checkIn.plusDays(random.nextInt(4) + 1));
+                        } else {
+                            request.setRoomId((long) SHARED_ROOMS + worker + 1);
+                            checkIn = start.plusDays((long) i * DatasetSeeder.DAYS_PER_SLOT);
+                            request.setCheckOutDate(checkIn.plusDays(DatasetSeeder.NIGHTS_PER_STAY));
+                        }
+                        request.setCheckInDate(checkIn);
+                        try {
+                            reservationService.createReservation((long) worker + 1, request);
+                            (shared ? sharedBooked : ownBooked).incrementAndGet();
+                        } catch (BookingConflictException e) {
+                            conflicts.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            
+            go.countDown();
+            for (Future<?> result : workers) {
+                result.get(2, TimeUnit.MINUTES);
+            }
+            pool.shutdown();
+            
+            int attempts = THREADS * BOOKINGS_PER_THREAD;
+            assertThat(jdbcTemplate.queryForObject(BookingLoadTest.OVERLAPPING_PAIRS, Long.class)).isZero();
+            assertThat(ownBooked.get()).isEqualTo(attempts / 2);
+            assertThat(sharedBooked.get()).isPositive();
+            assertThat(sharedBooked.get() + conflicts.get()).isEqualTo(attempts / 2);
+            assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reservations WHERE check_in_date >= ?",
+                    Long.class, start)).isEqualTo(sharedBooked.get() + ownBooked.get());
+        }
     }
 }
 
-// GlobalExceptionHandler.java
-package com.hotel.exception;
+// StatementCountTest.java
+package com.hotel.benchmarks;
 
-import org.springframework.http.HttpStatus;
+import com.hotel.dto.PaymentRequest;
+import com.hotel.model.Payment;
+import com.hotel.service.AvailabilityIndex;
+import com.hotel.service.PaymentService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.bind.annotation.RestControllerAdvice;
-import java.util.HashMap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.client.RestTemplate;
+import java.math.BigDecimal;
 import java.util.Map;
 
-@RestControllerAdvice
-public class GlobalExceptionHandler {
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Pins the statements each list and detail endpoint prepares, so a lazy association touched while
+// rendering (one more select per row) fails the build. Open-in-view is off, as in the perf profile.
+class StatementCountTest {
     
-    @ExceptionHandler(ResourceNotFoundException.class)
-    public ResponseEntity<Map<String, String>> handleResourceNotFound(ResourceNotFoundException ex) {
-        Map<String, String> error = new HashMap<>();
-        error.put("error", ex.getMessage());
-        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+    private static final int PAYMENTS = 20;
+    
+    private static ConfigurableApplicationContext context;
+    private static Statistics statistics;
+    private static RestTemplate restTemplate;
+    private static String baseUrl;
+    
+    @BeforeAll
+    static void start() {
+        context = HotelContext.start(Map.of(
+                "spring.datasource.url", HotelContext.h2Url("statement-count"),
+                "spring.jpa.open-in-view", "false",
+                "spring.jpa.properties.hibernate.generate_statistics", "true",
+                // Keeps the rollup flusher from writing while statements are being counted
+                "analytics.rollups.flush-interval-ms", "3600000"));
+        DatasetSeeder dataset = new DatasetSeeder(context.getBean(JdbcTemplate.class), 1000);
+        dataset.seed(context.getBean(PasswordEncoder.class).encode(DatasetSeeder.PASSWORD));
+        context.getBean(AvailabilityIndex.class).rebuild();
+        
+        PaymentService paymentService = context.getBean(PaymentService.class);
+        for (int i = 0; i < PAYMENTS; i++) {
+            PaymentRequest request = new PaymentRequest();
+            request.setReservationId(DatasetSeeder.payableReservationId(i));
+            request.setAmount(new BigDecimal("200.00"));
+            request.setPaymentMethod(Payment.PaymentMethod.CREDIT_CARD);
+            paymentService.processPayment(request);
+        }
+        
+        statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+        restTemplate = new RestTemplate();
+        baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
     }
     
-    @ExceptionHandler(Exception.class)
-    public ResponseEntity<Map<String, String>> handleGenericException(Exception ex) {
-        Map<String, String> error = new HashMap<>();
-        error.put("error", ex.getMessage());
-        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+    @AfterAll
+    static void stop() {
+        context.close();
+    }
+    
+    // A list is one select however many rows it returns; a detail is one select with its joins.
+    // Available rooms come from the availability index, and a room detail is cached after this call.
+    @ParameterizedTest(name = "GET {0} prepares {1} statements")
+    @CsvSource({
+            "/api/rooms?limit=100, 1",
+            "/api/rooms/available?checkIn=2030-01-01&checkOut=2030-01-03, 0",
+            "/api/rooms/7, 1",
+            "/api/reservations?limit=100, 1",
+            "/api/reservations/6, 1",
+            "/api/reservations/customer/3, 1",
+            "/api/payments?limit=100, 1",
+            "/api/payments/1, 1"
+    })
+    void endpointPreparesFixedStatementCount(String path, long statements) {
+        statistics.clear();
+        ResponseEntity<String> response = restTemplate.getForEntity(baseUrl + path, String.class);
+        
+        assertThat(response.getStatusCode().is2xxSuccessful()).isTrue();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements);
     }
 }
 
-// ============================================
-// SECURITY CONFIGURATION
-// ============================================
+// EmailOutboxTest.java
+package com.hotel.service;
 
-// SecurityConfig.java
-package com.hotel.config;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.security.config.annotation.web.builders.HttpSecurity;
-import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.security.web.SecurityFilterChain;
+import static org.assertj.core.api.Assertions.assertThat;
 
-@Configuration
-@EnableWebSecurity
-public class SecurityConfig {
+// Drives the dispatcher by hand (the scheduled poll never fires) against a sender that fails a set
+// number of times before it starts accepting mail. Lives in com.hotel.service to reach drain().
+class EmailOutboxTest {
     
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private EmailOutbox outbox;
+    
+    @AfterEach
+    void stop() throws InterruptedException {
+        outbox.stop();
     }
     
-    @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
-        http
-            .csrf(csrf -> csrf.disable())
-            .authorizeHttpRequests(auth -> auth
-                .requestMatchers("/api/auth/**").permitAll()
-                .requestMatchers("/api/**").permitAll()
-                .anyRequest().authenticated()
-            );
+    @Test
+    void sendsQueuedMailInBatches() {
+        FailingMailSender sender = new FailingMailSender(0);
+        outbox = start(sender, 100, 10, 5, 100);
+        enqueue(25);
+        assertThat(queueDepth()).isEqualTo(25);
         
-        return http.build();
+        outbox.drain();
+        
+        assertThat(sender.batchSizes).containsExactly(10, 10, 5);
+        assertThat(outbox.getSentCount()).isEqualTo(25);
+        assertThat(queueDepth()).isZero();
+        assertThat(meterRegistry.get("hotel.email.sent").functionCounter().count()).isEqualTo(25);
+        assertThat(meterRegistry.get("hotel.email.delivery").timer().count()).isEqualTo(25);
+        assertThat(meterRegistry.get("hotel.email.send").timer().count()).isEqualTo(3);
+    }
+    
+    @Test
+    void retriesFailedBatchesWithDoublingBackoff() throws InterruptedException {
+        FailingMailSender sender = new FailingMailSender(2);
+        outbox = start(sender, 100, 10, 5, 100);
+        enqueue(3);
+        
+        outbox.drain();
+        assertThat(sender.attempts).hasSize(1);
+        assertThat(outbox.getRetriedCount()).isEqualTo(3);
+        assertThat(queueDepth()).isEqualTo(3);
+        // Still backing off: nothing is due yet
+        outbox.drain();
+        assertThat(sender.attempts).hasSize(1);
+        
+        drainUntil(() -> outbox.getSentCount() == 3);
+        
+        assertThat(sender.attempts).hasSize(3);
+        long firstBackoff = sender.attempts.get(1) - sender.attempts.get(0);
+        long secondBackoff = sender.attempts.get(2) - sender.attempts.get(1);
+        assertThat(firstBackoff).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(secondBackoff).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(200));
+        assertThat(outbox.getRetriedCount()).isEqualTo(6);
+        assertThat(outbox.getFailedCount()).isZero();
+        assertThat(queueDepth()).isZero();
+        // Delivery latency runs from enqueue to acceptance, so it includes both backoffs
+        Timer delivery = meterRegistry.get("hotel.email.delivery").timer();
+        assertThat(delivery.count()).isEqualTo(3);
+        assertThat(delivery.max(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(300);
+        assertThat(meterRegistry.get("hotel.email.retries").functionCounter().count()).isEqualTo(6);
+    }
+    
+    @Test
+    void givesUpAfterMaxAttempts() throws InterruptedException {
+        FailingMailSender sender = new FailingMailSender(Integer.MAX_VALUE);
+        outbox = start(sender, 100, 10, 3, 10);
+        enqueue(2);
+        
+        drainUntil(() -> outbox.getFailedCount() == 2);
+        
+        assertThat(sender.attempts).hasSize(3);
+        assertThat(outbox.getRetriedCount()).isEqualTo(4);
+        assertThat(outbox.getSentCount()).isZero();
+        assertThat(queueDepth()).isZero();
+        assertThat(meterRegistry.get("hotel.email.failed").functionCounter().count()).isEqualTo(2);
+    }
+    
+    @Test
+    void dropsMailWhenFull() {
+        FailingMailSender sender = new FailingMailSender(0);
+        outbox = start(sender, 5, 10, 5, 100);
+        enqueue(8);
+        
+        assertThat(queueDepth()).isEqualTo(5);
+        assertThat(outbox.getDroppedCount()).isEqualTo(3);
+        assertThat(meterRegistry.get("hotel.email.dropped").functionCounter().count()).isEqualTo(3);
+        
+        outbox.drain();
+        assertThat(sender.batchSizes).containsExactly(5);
+        assertThat(queueDepth()).isZero();
+    }
+    
+    private EmailOutbox start(FailingMailSender sender, int capacity, int batchSize, int maxAttempts,
+                              long initialBackoffMillis) {
+        EmailOutbox started = new EmailOutbox(sender, meterRegistry);
+        ReflectionTestUtils.setField(started, "capacity", capacity);
+        ReflectionTestUtils.setField(started, "batchSize", batchSize);
+        ReflectionTestUtils.setField(started, "maxAttempts", maxAttempts);
+        ReflectionTestUtils.setField(started, "initialBackoffMillis", initialBackoffMillis);
+        ReflectionTestUtils.setField(started, "pollIntervalMillis", TimeUnit.HOURS.toMillis(1));
+        started.start();
+        return started;
+    }
+    
+    private void enqueue(int count) {
+        for (int i = 0; i < count; i++) {
+            SimpleMailMessage message = new SimpleMailMessage();
+            message.setTo("guest" + i + "@bench.local");
+            message.setSubject("Reservation Confirmation - " + i);
+            outbox.enqueue(message);
+        }
+    }
+    
+    private double queueDepth() {
+        return meterRegistry.get("hotel.email.queue.depth").gauge().value();
+    }
+    
+    private void drainUntil(BooleanSupplier done) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!done.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("outbox did not settle in time").isLessThan(deadline);
+            Thread.sleep(10);
+            outbox.drain();
+        }
+    }
+    
+    // Fails the first failures calls, then accepts everything
+    private static final class FailingMailSender extends JavaMailSenderImpl {
+        private final AtomicInteger failuresLeft;
+        private final List<Long> attempts = new CopyOnWriteArrayList<>();
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        
+        FailingMailSender(int failures) {
+            this.failuresLeft = new AtomicInteger(failures);
+        }
+        
+        @Override
+        public void send(SimpleMailMessage... simpleMessages) {
+            attempts.add(System.nanoTime());
+            if (failuresLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+                throw new MailSendException("SMTP server unavailable");
+            }
+            batchSizes.add(simpleMessages.length);
+        }
     }
 }